@@ -0,0 +1,70 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.SectorHotspot;
+import com.example.stockmonitor.service.AggregationService;
+import com.example.stockmonitor.service.AnalysisSnapshot;
+import com.example.stockmonitor.service.AnalysisStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch aggregation over 10k analyses, against publishing a snapshot with incremental aggregates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    @Param({"10000"})
+    int analyses;
+
+    private AnalysisStore store;
+    private AggregationService aggregation;
+    private List<AnalysisResult> items;
+    private SplittableRandom random;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        random = new SplittableRandom(42);
+        store = new AnalysisStore(60, 10, new SimpleMeterRegistry());
+        aggregation = new AggregationService(store);
+        items = new ArrayList<AnalysisResult>(analyses);
+        for (int i = 0; i < analyses; i++) {
+            AnalysisResult ar = Fixtures.analysis(i, random);
+            items.add(ar);
+            store.put(ar);
+        }
+        store.completeCycle(null);
+    }
+
+    @Benchmark
+    public List<SectorHotspot> sectorHotspots() {
+        return aggregation.computeSectorHotspots(items);
+    }
+
+    @Benchmark
+    public List<AnalysisResult> topByValue() {
+        return aggregation.pickTopByValue(items, 5);
+    }
+
+    /**
+     * Publishes a cycle that rewrote one symbol: the snapshot maps are copied, and the listener
+     * updates totals and republishes both aggregates.
+     */
+    @Benchmark
+    public AnalysisSnapshot publishOneUpdate() {
+        int i = next++ % analyses;
+        store.put(Fixtures.analysis(i, random));
+        return store.completeCycle(null);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic inputs shared by the benchmarks, and the recorded-format JSON fixtures.
+ */
+final class Fixtures {
+
+    static final String[] SECTORS = {"Technology", "Healthcare", "Financial Services", "Energy", "Industrials",
+            "Consumer Cyclical", "Consumer Defensive", "Utilities", "Real Estate", "Basic Materials", "Communication Services"};
+
+    private Fixtures() {
+    }
+
+    static byte[] resource(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/replay/" + name)) {
+            if (in == null) throw new IllegalStateException("Missing fixture " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 5-minute bars following a log-normal random walk from 100.
+     */
+    static BarSeries randomWalk(int size, SplittableRandom random) {
+        BarSeries s = new BarSeries(size);
+        double price = 100.0;
+        long time = 1_700_000_000L;
+        for (int i = 0; i < size; i++) {
+            double open = price;
+            price *= Math.exp((random.nextDouble() - 0.5) * 0.006);
+            double high = Math.max(open, price) * (1 + random.nextDouble() * 0.001);
+            double low = Math.min(open, price) * (1 - random.nextDouble() * 0.001);
+            s.add(time + i * 300L, open, high, low, price, 1000 + random.nextInt(100_000));
+        }
+        return s;
+    }
+
+    static AnalysisResult analysis(int i, SplittableRandom random) {
+        AnalysisResult ar = new AnalysisResult();
+        ar.symbol = "S" + i;
+        ar.name = "Symbol " + i;
+        ar.sector = SECTORS[i % SECTORS.length];
+        ar.quote = quote(ar.symbol, random);
+        ar.technicals = technicals(random);
+        ar.qualityScore = random.nextDouble();
+        ar.valuationScore = random.nextDouble();
+        ar.momentumScore = random.nextDouble();
+        ar.signal = random.nextBoolean() ? "BUY" : "WATCH";
+        return ar;
+    }
+
+    static Quote quote(String symbol, SplittableRandom random) {
+        Quote q = new Quote();
+        q.symbol = symbol;
+        q.price = 5 + random.nextDouble() * 400;
+        q.changePercent = -random.nextDouble() * 25;
+        q.previousClose = q.price * (1 - q.changePercent / 100);
+        q.volume = 100_000 + random.nextInt(50_000_000);
+        q.averageVolume = 1_000_000;
+        q.marketCap = 2_000_000_000L + random.nextInt(1_000_000_000);
+        q.asOf = Instant.now();
+        return q;
+    }
+
+    static TechnicalSnapshot technicals(SplittableRandom random) {
+        TechnicalSnapshot t = new TechnicalSnapshot();
+        t.rsi14 = random.nextDouble() * 100;
+        t.volumeZScore = random.nextDouble() * 4 - 1;
+        t.ema20 = 100;
+        t.ema50 = 101;
+        t.atr14 = 1.5;
+        t.obv = 1e6;
+        return t;
+    }
+
+    static Fundamentals fundamentals() {
+        Fundamentals f = new Fundamentals();
+        f.peRatio = 18.5;
+        f.pbRatio = 2.4;
+        f.profitMargins = 0.21;
+        f.debtToEquity = 0.8;
+        f.revenueGrowth = 0.07;
+        f.freeCashflow = 8.6e10;
+        f.returnOnEquity = 0.32;
+        return f;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+import com.example.stockmonitor.service.IndicatorService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch indicators over columnar series of 1k to 100k bars.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndicatorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int bars;
+
+    private final IndicatorService indicators = new IndicatorService();
+    private BarSeries series;
+
+    @Setup
+    public void setUp() {
+        series = Fixtures.randomWalk(bars, new SplittableRandom(42));
+    }
+
+    @Benchmark
+    public double rsi() {
+        return indicators.rsi(series.closes(), series.size(), 14);
+    }
+
+    @Benchmark
+    public double ema() {
+        return indicators.ema(series.closes(), series.size(), 50);
+    }
+
+    @Benchmark
+    public double atr() {
+        return indicators.atr(series, 14);
+    }
+
+    @Benchmark
+    public double obv() {
+        return indicators.obv(series);
+    }
+
+    @Benchmark
+    public double zscore() {
+        return indicators.zscore(series.volumes(), series.size(), 100);
+    }
+
+    @Benchmark
+    public TechnicalSnapshot snapshot() {
+        return indicators.computeTechnicalSnapshot(series);
+    }
+}
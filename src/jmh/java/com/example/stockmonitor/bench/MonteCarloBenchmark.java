@@ -0,0 +1,28 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.service.MonteCarloService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeded single-instrument simulation over a 20-day horizon at several path counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MonteCarloBenchmark {
+
+    @Param({"5000", "100000", "1000000"})
+    int paths;
+
+    private final MonteCarloService monteCarlo = new MonteCarloService();
+
+    @Benchmark
+    public MonteCarloService.SimulationResult simulate() {
+        return monteCarlo.simulate(100.0, 0.03, 20, 105.0, 97.0, paths, 42L);
+    }
+}
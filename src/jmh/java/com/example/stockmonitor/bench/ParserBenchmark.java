@@ -0,0 +1,60 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.service.YahooResponseParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming against tree parsing of Yahoo screener, quoteSummary and chart responses in
+ * src/main/resources/replay.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"streaming", "tree"})
+    String parser;
+
+    private final YahooResponseParser yahoo = new YahooResponseParser(new ObjectMapper());
+    private byte[] screener;
+    private byte[] quoteSummary;
+    private byte[] chart;
+    private boolean streaming;
+
+    @Setup
+    public void setUp() {
+        screener = Fixtures.resource("screener-day-losers.json");
+        quoteSummary = Fixtures.resource("quote-summary.json");
+        chart = Fixtures.resource("chart-5m-1mo.json");
+        streaming = "streaming".equals(parser);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> topLosers() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(screener);
+        return streaming ? yahoo.parseTopLosers(in) : yahoo.parseTopLosersTree(in);
+    }
+
+    @Benchmark
+    public Map<String, Object> quoteSummary() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(quoteSummary);
+        return streaming ? yahoo.parseQuoteSummary(in) : yahoo.parseQuoteSummaryTree(in);
+    }
+
+    @Benchmark
+    public BarSeries chart() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(chart);
+        return streaming ? yahoo.parseChart(in) : yahoo.parseChartTree(in);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.example.stockmonitor.service.RuleProgram;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hundreds of screens, sharing most of their terms, over a cycle's worth of analyses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScreenBenchmark {
+
+    @Param({"300"})
+    int rules;
+
+    @Param({"5000"})
+    int analyses;
+
+    private RuleProgram program;
+    private List<AnalysisResult> items;
+    private GreedIndex greed;
+    private RuleProgram.Evaluator evaluator;
+
+    @Setup
+    public void setUp() {
+        Map<String, String> screens = new LinkedHashMap<String, String>();
+        for (int i = 0; i < rules; i++) {
+            screens.put("s" + i, "technicals.rsi14 < " + (20 + i % 20)
+                    + " and quote.changePercent <= -" + (i % 15)
+                    + " and (qualityScore >= 0." + (i % 9) + " or signal == \"BUY\")"
+                    + " and quote.marketCap >= 2e9 and greed.value < " + (30 + i % 3 * 10));
+        }
+        program = RuleProgram.compile(screens);
+        evaluator = program.newEvaluator();
+        SplittableRandom random = new SplittableRandom(42);
+        items = new ArrayList<AnalysisResult>(analyses);
+        for (int i = 0; i < analyses; i++) items.add(Fixtures.analysis(i, random));
+        greed = new GreedIndex();
+        greed.value = 32;
+        greed.label = "Fear";
+        greed.asOf = Instant.now();
+    }
+
+    @Benchmark
+    public int evaluateAll() {
+        evaluator.evaluate(items, greed);
+        int matched = 0;
+        for (int r = 0; r < program.ruleCount(); r++) {
+            for (int j = evaluator.nextMatch(r, 0); j >= 0; j = evaluator.nextMatch(r, j + 1)) matched++;
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.stockmonitor.bench;
+
+import com.example.stockmonitor.model.StockModels.*;
+import com.example.stockmonitor.service.ScreeningService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full analysis build, including the String.format calls for the reason text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScreeningBenchmark {
+
+    private final ScreeningService screening = new ScreeningService();
+    private Quote quote;
+    private TechnicalSnapshot technicals;
+    private Fundamentals fundamentals;
+    private GreedIndex greed;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        quote = Fixtures.quote("AAPL", random);
+        technicals = Fixtures.technicals(random);
+        fundamentals = Fixtures.fundamentals();
+        greed = new GreedIndex();
+        greed.value = 32;
+        greed.label = "Fear";
+        greed.asOf = Instant.now();
+    }
+
+    @Benchmark
+    public AnalysisResult buildAnalysis() {
+        return screening.buildAnalysis("AAPL", "Apple Inc.", "Technology", "Consumer Electronics",
+                quote, technicals, fundamentals, greed);
+    }
+
+    @Benchmark
+    public String deriveSignal() {
+        return screening.deriveSignal(quote, technicals, greed);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.stockmonitor.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caffeine caches for upstream responses, one per data type with its own TTL. Stats are recorded
+ * so actuator publishes cache.gets (hit/miss), cache.puts and cache.evictions per cache.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String QUOTES = "quotes";
+    public static final String PROFILES = "profiles";
+    public static final String CHARTS = "charts";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${monitor.cache.quotes.ttl.seconds:30}") long quotesTtl,
+                                     @Value("${monitor.cache.profiles.ttl.seconds:21600}") long profilesTtl,
+                                     @Value("${monitor.cache.charts.ttl.seconds:300}") long chartsTtl,
+                                     @Value("${monitor.cache.max.entries:10000}") long maxEntries) {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        manager.registerCustomCache(QUOTES, build(quotesTtl, maxEntries));
+        manager.registerCustomCache(PROFILES, build(profilesTtl, maxEntries));
+        manager.registerCustomCache(CHARTS, build(chartsTtl, maxEntries));
+        return manager;
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> build(long ttlSeconds, long maxEntries) {
+        return Caffeine.newBuilder()
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+    }
+}
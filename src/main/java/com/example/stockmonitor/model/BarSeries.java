@@ -0,0 +1,159 @@
+package com.example.stockmonitor.model;
+
+import com.example.stockmonitor.model.StockModels.IntradayBar;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar OHLCV series backed by parallel primitive arrays, ordered by time (epoch seconds).
+ * The column accessors return the backing arrays; only the first {@link #size()} entries are valid.
+ */
+public class BarSeries {
+
+    private long[] times;
+    private double[] opens;
+    private double[] highs;
+    private double[] lows;
+    private double[] closes;
+    private long[] volumes;
+    private int size;
+
+    public BarSeries(int capacity) {
+        int c = Math.max(capacity, 0);
+        times = new long[c];
+        opens = new double[c];
+        highs = new double[c];
+        lows = new double[c];
+        closes = new double[c];
+        volumes = new long[c];
+    }
+
+    /**
+     * Wraps existing columns without copying; every array must hold at least {@code size} entries.
+     */
+    public static BarSeries wrap(long[] times, double[] opens, double[] highs, double[] lows,
+                                 double[] closes, long[] volumes, int size) {
+        BarSeries s = new BarSeries(0);
+        s.times = times;
+        s.opens = opens;
+        s.highs = highs;
+        s.lows = lows;
+        s.closes = closes;
+        s.volumes = volumes;
+        s.size = size;
+        return s;
+    }
+
+    public void add(long time, double open, double high, double low, double close, long volume) {
+        if (size == times.length) grow(size + 1);
+        times[size] = time;
+        opens[size] = open;
+        highs[size] = high;
+        lows[size] = low;
+        closes[size] = close;
+        volumes[size] = volume;
+        size++;
+    }
+
+    /**
+     * Appends all bars of another series.
+     */
+    public void addAll(BarSeries other) {
+        int n = other.size;
+        if (size + n > times.length) grow(size + n);
+        System.arraycopy(other.times, 0, times, size, n);
+        System.arraycopy(other.opens, 0, opens, size, n);
+        System.arraycopy(other.highs, 0, highs, size, n);
+        System.arraycopy(other.lows, 0, lows, size, n);
+        System.arraycopy(other.closes, 0, closes, size, n);
+        System.arraycopy(other.volumes, 0, volumes, size, n);
+        size += n;
+    }
+
+    /**
+     * Drops every bar from {@code index} to the end.
+     */
+    public void truncate(int index) {
+        if (index < size) size = Math.max(index, 0);
+    }
+
+    /**
+     * Drops the first {@code count} bars.
+     */
+    public void dropHead(int count) {
+        if (count <= 0) return;
+        int n = Math.min(count, size);
+        int remaining = size - n;
+        System.arraycopy(times, n, times, 0, remaining);
+        System.arraycopy(opens, n, opens, 0, remaining);
+        System.arraycopy(highs, n, highs, 0, remaining);
+        System.arraycopy(lows, n, lows, 0, remaining);
+        System.arraycopy(closes, n, closes, 0, remaining);
+        System.arraycopy(volumes, n, volumes, 0, remaining);
+        size = remaining;
+    }
+
+    /**
+     * Index of the first bar whose time is at or after {@code time}, or {@link #size()} if none.
+     */
+    public int indexAtOrAfter(long time) {
+        int i = Arrays.binarySearch(times, 0, size, time);
+        if (i >= 0) {
+            while (i > 0 && times[i - 1] == time) i--;
+            return i;
+        }
+        return -i - 1;
+    }
+
+    public BarSeries copy() {
+        BarSeries s = new BarSeries(size);
+        s.addAll(this);
+        return s;
+    }
+
+    public List<IntradayBar> toBars() {
+        List<IntradayBar> bars = new ArrayList<IntradayBar>(size);
+        for (int i = 0; i < size; i++) {
+            IntradayBar b = new IntradayBar();
+            b.time = Instant.ofEpochSecond(times[i]);
+            b.open = opens[i];
+            b.high = highs[i];
+            b.low = lows[i];
+            b.close = closes[i];
+            b.volume = volumes[i];
+            bars.add(b);
+        }
+        return bars;
+    }
+
+    private void grow(int minCapacity) {
+        int c = Math.max(minCapacity, Math.max(16, times.length + (times.length >> 1)));
+        times = Arrays.copyOf(times, c);
+        opens = Arrays.copyOf(opens, c);
+        highs = Arrays.copyOf(highs, c);
+        lows = Arrays.copyOf(lows, c);
+        closes = Arrays.copyOf(closes, c);
+        volumes = Arrays.copyOf(volumes, c);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public long time(int i) { return times[i]; }
+    public double open(int i) { return opens[i]; }
+    public double high(int i) { return highs[i]; }
+    public double low(int i) { return lows[i]; }
+    public double close(int i) { return closes[i]; }
+    public long volume(int i) { return volumes[i]; }
+    public long firstTime() { return times[0]; }
+    public long lastTime() { return times[size - 1]; }
+
+    public long[] times() { return times; }
+    public double[] opens() { return opens; }
+    public double[] highs() { return highs; }
+    public double[] lows() { return lows; }
+    public double[] closes() { return closes; }
+    public long[] volumes() { return volumes; }
+}
@@ -30,6 +30,13 @@ public class StockModels {
         public Instant asOf;
     }
 
+    public static class SymbolSnapshot {
+        public String symbol;
+        public TickerInfo info;
+        public Quote quote;
+        public Fundamentals fundamentals;
+    }
+
     public static class IntradayBar {
         public Instant time;
         public double open;
@@ -66,6 +73,7 @@ public class StockModels {
         public String industry;
         public Quote quote;
         public TechnicalSnapshot technicals;
+        public Map<String, TechnicalSnapshot> timeframes; // by label, e.g. 15m, 1h, 1d; resampled from technicals' bars
         public Fundamentals fundamentals;
         public double qualityScore;
         public double valuationScore;
@@ -75,6 +83,15 @@ public class StockModels {
         public Map<String, Object> extras;
     }
 
+    public static class AnalysisDiff {
+        public long fromVersion;
+        public long toVersion;
+        public boolean full; // fromVersion no longer kept: updated holds every analysis
+        public String cursor; // pass as since= for the changes after this diff
+        public List<AnalysisResult> updated;
+        public List<String> removed;
+    }
+
     public static class SectorHotspot {
         public String sector;
         public int losersCount;
@@ -93,6 +110,75 @@ public class StockModels {
         public String notes;
     }
 
+    public static class BacktestReport {
+        public int symbols;
+        public long bars;
+        public int trades;
+        public int wins;
+        public double hitRate;
+        public double totalPnl;
+        public double averageReturn;
+        public double profitFactor;
+        public int chunkDays;
+        public String note; // how chunking affects the results
+        public long elapsedMillis;
+        public List<BacktestBucket> scoreBuckets;
+    }
+
+    public static class BacktestBucket {
+        public double minScore;
+        public double maxScore;
+        public int trades;
+        public double hitRate;
+        public double averageReturn;
+        public double totalPnl;
+    }
+
+    public static class Alert {
+        public long id;
+        public String symbol;
+        public String type; // DROP_PRIMARY, DROP_SECONDARY, BUY
+        public double changePercent;
+        public double threshold; // drop percent crossed; NaN for BUY
+        public double price;
+        public String signal;
+        public String message;
+        public Instant quotedAt;
+        public Instant raisedAt;
+    }
+
+    public static class ScreenReport {
+        public long version;
+        public long snapshotVersion;
+        public int rules;
+        public int distinctTerms; // subexpressions left after sharing across rules
+        public long evaluationMicros;
+        public List<ScreenResult> screens;
+    }
+
+    public static class ScreenResult {
+        public String name;
+        public String expression;
+        public int matches;
+        public List<String> symbols;
+    }
+
+    public static class ShardResults {
+        public String nodeId;
+        public Instant publishedAt;
+        public List<AnalysisResult> analyses; // those the node owns on its ring
+        public Map<String, Instant> refreshedAt; // by normalised symbol
+    }
+
+    public static class ShardStatus {
+        public String nodeId;
+        public String backend;
+        public List<String> members;
+        public double rateShare; // fraction of monitor.upstream.requests.per.second used by this node
+        public int owned; // symbols in the current snapshot this node owns
+        public long merged; // analyses taken from peers since startup
+    }
+
     public static class GreedIndex {
         public int value; // 0-100
         public String label; // Extreme Fear -> Extreme Greed
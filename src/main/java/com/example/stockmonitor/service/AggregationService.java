@@ -6,13 +6,193 @@ import org.springframework.stereotype.Service;
 
 import java.util.*;
 
+/**
+ * Sector hotspots and value-weighted top picks. Besides the batch methods, it keeps both
+ * aggregates up to date from the updated and removed symbols of each {@link AnalysisSnapshot}
+ * and publishes immutable lists, so the read endpoints do no work per request. A sector's totals
+ * are summed again from its members whenever one of them changes, so they never drift, and a
+ * non-finite change percent is left out of the drop average.
+ */
 @Service
-public class AggregationService {
+public class AggregationService implements AnalysisListener {
+
+    // picks kept ranked ahead of time; readers take a prefix
+    private static final int MAX_TOP_PICKS = 20;
+
+    private static final Comparator<SectorHotspot> HOTSPOT_ORDER = new Comparator<SectorHotspot>() {
+        @Override
+        public int compare(SectorHotspot a, SectorHotspot b) {
+            int cmp = Long.compare(b.totalVolume, a.totalVolume);
+            if (cmp != 0) return cmp;
+            return Double.compare(a.averageDropPercent, b.averageDropPercent);
+        }
+    };
+
+    private static final Comparator<Scored> SCORE_ORDER = new Comparator<Scored>() {
+        @Override
+        public int compare(Scored a, Scored b) {
+            int cmp = Double.compare(b.score, a.score);
+            if (cmp != 0) return cmp;
+            return a.key.compareTo(b.key);
+        }
+    };
+
+    private static class SectorTotals {
+        final Map<String, AnalysisResult> members = new HashMap<String, AnalysisResult>();
+        boolean dirty;
+        long totalVolume;
+        double dropSum;
+
+        void recompute() {
+            totalVolume = 0;
+            dropSum = 0;
+            for (AnalysisResult ar : members.values()) {
+                if (ar.quote == null) continue;
+                totalVolume += ar.quote.volume;
+                if (Double.isFinite(ar.quote.changePercent)) dropSum += ar.quote.changePercent;
+            }
+            dirty = false;
+        }
+    }
+
+    private static class Scored {
+        final String key;
+        final double score;
+        final AnalysisResult analysis;
+
+        Scored(String key, AnalysisResult analysis) {
+            this.key = key;
+            this.score = compositeScore(analysis);
+            this.analysis = analysis;
+        }
+    }
+
+    private final Map<String, SectorTotals> sectors = new HashMap<String, SectorTotals>();
+    private final Map<String, Scored> scoredBySymbol = new HashMap<String, Scored>();
+    private final TreeSet<Scored> ranking = new TreeSet<Scored>(SCORE_ORDER);
+
+    private volatile Aggregates aggregates = new Aggregates(0L, Collections.<SectorHotspot>emptyList(),
+            Collections.<AnalysisResult>emptyList());
+
+    /**
+     * Hotspots and top picks published together, with the snapshot version they came from.
+     */
+    public static final class Aggregates {
+        private final long version;
+        private final List<SectorHotspot> hotspots;
+        private final List<AnalysisResult> topPicks;
+
+        Aggregates(long version, List<SectorHotspot> hotspots, List<AnalysisResult> topPicks) {
+            this.version = version;
+            this.hotspots = hotspots;
+            this.topPicks = topPicks;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<SectorHotspot> getHotspots() {
+            return hotspots;
+        }
+
+        public List<AnalysisResult> getTopPicks(int limit) {
+            return topPicks.size() > limit ? topPicks.subList(0, limit) : topPicks;
+        }
+    }
+
+    public AggregationService(AnalysisStore analysisStore) {
+        analysisStore.addListener(this);
+    }
+
+    public static double compositeScore(AnalysisResult ar) {
+        return compositeScore(ar.qualityScore, ar.valuationScore, ar.momentumScore);
+    }
+
+    public static double compositeScore(double quality, double valuation, double momentum) {
+        return quality * 0.5 + valuation * 0.3 + momentum * 0.2;
+    }
+
+    @Override
+    public synchronized void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current) {
+        for (String key : current.getRemoved()) {
+            remove(key, previous.get(key));
+        }
+        for (String key : current.getUpdated()) {
+            remove(key, previous.get(key));
+            add(key, current.get(key));
+        }
+        publish(current.getVersion());
+    }
+
+    private void remove(String key, AnalysisResult ar) {
+        if (ar == null) return;
+        SectorTotals t = sectors.get(sectorOf(ar));
+        if (t != null && t.members.remove(key) != null) {
+            t.dirty = true;
+            if (t.members.isEmpty()) sectors.remove(sectorOf(ar));
+        }
+        Scored old = scoredBySymbol.remove(key);
+        if (old != null) ranking.remove(old);
+    }
+
+    private void add(String key, AnalysisResult ar) {
+        String sector = sectorOf(ar);
+        SectorTotals t = sectors.get(sector);
+        if (t == null) {
+            t = new SectorTotals();
+            sectors.put(sector, t);
+        }
+        t.members.put(key, ar);
+        t.dirty = true;
+        Scored scored = new Scored(key, ar);
+        scoredBySymbol.put(key, scored);
+        ranking.add(scored);
+    }
+
+    public Aggregates getAggregates() {
+        return aggregates;
+    }
+
+    public List<SectorHotspot> getSectorHotspots() {
+        return aggregates.getHotspots();
+    }
+
+    public List<AnalysisResult> getTopPicks(int limit) {
+        return aggregates.getTopPicks(limit);
+    }
+
+    private void publish(long snapshotVersion) {
+        List<SectorHotspot> list = new ArrayList<SectorHotspot>(sectors.size());
+        for (Map.Entry<String, SectorTotals> e : sectors.entrySet()) {
+            SectorTotals t = e.getValue();
+            if (t.dirty) t.recompute();
+            SectorHotspot s = new SectorHotspot();
+            s.sector = e.getKey();
+            s.losersCount = t.members.size();
+            s.totalVolume = t.totalVolume;
+            s.averageDropPercent = t.dropSum / t.members.size();
+            list.add(s);
+        }
+        Collections.sort(list, HOTSPOT_ORDER);
+
+        List<AnalysisResult> picks = new ArrayList<AnalysisResult>(Math.min(MAX_TOP_PICKS, ranking.size()));
+        for (Scored s : ranking) {
+            if (picks.size() == MAX_TOP_PICKS) break;
+            picks.add(s.analysis);
+        }
+        aggregates = new Aggregates(snapshotVersion, Collections.unmodifiableList(list),
+                Collections.unmodifiableList(picks));
+    }
+
+    private static String sectorOf(AnalysisResult ar) {
+        return ar.sector != null ? ar.sector : "Unknown";
+    }
 
     public List<SectorHotspot> computeSectorHotspots(Collection<AnalysisResult> analyses) {
         Map<String, SectorHotspot> map = new HashMap<String, SectorHotspot>();
         for (AnalysisResult ar : analyses) {
-            String sector = ar.sector != null ? ar.sector : "Unknown";
+            String sector = sectorOf(ar);
             SectorHotspot s = map.get(sector);
             if (s == null) {
                 s = new SectorHotspot();
@@ -22,21 +202,14 @@ public class AggregationService {
             s.losersCount++;
             if (ar.quote != null) {
                 s.totalVolume += ar.quote.volume;
-                s.averageDropPercent += ar.quote.changePercent;
+                if (Double.isFinite(ar.quote.changePercent)) s.averageDropPercent += ar.quote.changePercent;
             }
         }
         List<SectorHotspot> list = new ArrayList<SectorHotspot>(map.values());
         for (SectorHotspot s : list) {
             if (s.losersCount > 0) s.averageDropPercent = s.averageDropPercent / s.losersCount;
         }
-        Collections.sort(list, new Comparator<SectorHotspot>() {
-            @Override
-            public int compare(SectorHotspot a, SectorHotspot b) {
-                int cmp = Long.compare(b.totalVolume, a.totalVolume);
-                if (cmp != 0) return cmp;
-                return Double.compare(a.averageDropPercent, b.averageDropPercent);
-            }
-        });
+        Collections.sort(list, HOTSPOT_ORDER);
         return list;
     }
 
@@ -45,12 +218,10 @@ public class AggregationService {
         Collections.sort(list, new Comparator<AnalysisResult>() {
             @Override
             public int compare(AnalysisResult a, AnalysisResult b) {
-                double sa = a.qualityScore * 0.5 + a.valuationScore * 0.3 + a.momentumScore * 0.2;
-                double sb = b.qualityScore * 0.5 + b.valuationScore * 0.3 + b.momentumScore * 0.2;
-                return Double.compare(sb, sa);
+                return Double.compare(compositeScore(b), compositeScore(a));
             }
         });
         if (list.size() > limit) return new ArrayList<AnalysisResult>(list.subList(0, limit));
         return list;
     }
-}
\ No newline at end of file
+}
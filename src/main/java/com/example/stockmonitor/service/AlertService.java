@@ -0,0 +1,236 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.Alert;
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Raises alerts as each symbol's analysis completes, rather than when the cycle publishes:
+ * when the drop crosses {@code monitor.drop.threshold.primary} or {@code .secondary}, and when the
+ * signal turns BUY. A drop level re-arms only once the drop has recovered past its threshold by
+ * the hysteresis band, and the same alert type is not repeated for a symbol within the cooldown.
+ * <p>
+ * State for a symbol first seen is seeded from its published analysis, so a restart does not
+ * alert again for drops already reported. Alerts are handed to every {@link AlertSink} through
+ * its own bounded queue; when a queue is full the alert is dropped for that sink and counted.
+ */
+@Service
+public class AlertService {
+
+    private static final Logger log = LoggerFactory.getLogger(AlertService.class);
+
+    public static final String DROP_PRIMARY = "DROP_PRIMARY";
+    public static final String DROP_SECONDARY = "DROP_SECONDARY";
+    public static final String BUY = "BUY";
+
+    private static final int RECENT = 100;
+    private static final Duration IDLE_EVICTION = Duration.ofDays(1);
+
+    private final AnalysisStore analysisStore;
+    private final double primaryThreshold;
+    private final double secondaryThreshold;
+    private final double hysteresis;
+    private final Duration cooldown;
+    private final List<Dispatcher> dispatchers = new ArrayList<Dispatcher>();
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, State> states = new ConcurrentHashMap<String, State>();
+    private final AtomicLong sequence = new AtomicLong();
+    // newest first; guarded by itself
+    private final Deque<Alert> recent = new ArrayDeque<Alert>();
+
+    private static class State {
+        // 0 none, 1 past primary, 2 past secondary
+        int level;
+        boolean buy;
+        final Map<String, Instant> lastRaised = new HashMap<String, Instant>();
+        volatile Instant lastSeen = Instant.now();
+    }
+
+    private static class Dispatcher {
+        final AlertSink sink;
+        final ThreadPoolExecutor executor;
+        final Timer latency;
+        final Counter failed;
+        final Counter dropped;
+
+        Dispatcher(AlertSink sink, int capacity, MeterRegistry registry) {
+            this.sink = sink;
+            this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, capacity)), r -> {
+                Thread t = new Thread(r, "alert-" + sink.name());
+                t.setDaemon(true);
+                return t;
+            });
+            this.latency = Timer.builder("monitor.alert.latency")
+                    .description("Time from the quote being fetched to the alert being delivered")
+                    .tag("sink", sink.name())
+                    .publishPercentileHistogram()
+                    .register(registry);
+            this.failed = Counter.builder("monitor.alert.failed").tag("sink", sink.name()).register(registry);
+            this.dropped = Counter.builder("monitor.alert.dropped").tag("sink", sink.name()).register(registry);
+        }
+    }
+
+    public AlertService(AnalysisStore analysisStore, List<AlertSink> sinks,
+                        @Value("${monitor.drop.threshold.primary:10}") double primaryThreshold,
+                        @Value("${monitor.drop.threshold.secondary:20}") double secondaryThreshold,
+                        @Value("${monitor.alerts.hysteresis.percent:2}") double hysteresis,
+                        @Value("${monitor.alerts.cooldown.minutes:30}") long cooldownMinutes,
+                        @Value("${monitor.alerts.queue.capacity:1000}") int queueCapacity,
+                        MeterRegistry meterRegistry) {
+        this.analysisStore = analysisStore;
+        this.primaryThreshold = primaryThreshold;
+        this.secondaryThreshold = Math.max(primaryThreshold, secondaryThreshold);
+        this.hysteresis = Math.max(0.0, hysteresis);
+        this.cooldown = Duration.ofMinutes(Math.max(0L, cooldownMinutes));
+        this.meterRegistry = meterRegistry;
+        for (AlertSink sink : sinks) {
+            dispatchers.add(new Dispatcher(sink, queueCapacity, meterRegistry));
+        }
+    }
+
+    /**
+     * Checks a freshly built analysis for threshold crossings and BUY transitions, and queues any
+     * resulting alerts. Called from the scan pipeline; never blocks on delivery.
+     */
+    public void evaluate(AnalysisResult ar) {
+        if (ar == null || ar.quote == null) return;
+        String key = AnalysisStore.normalize(ar.symbol);
+        State s = states.get(key);
+        if (s == null) {
+            State seeded = seed(analysisStore.get(key));
+            s = states.putIfAbsent(key, seeded);
+            if (s == null) s = seeded;
+        }
+        s.lastSeen = Instant.now();
+
+        List<Alert> raised = new ArrayList<Alert>(2);
+        synchronized (s) {
+            double drop = -ar.quote.changePercent;
+            if (!Double.isNaN(drop)) {
+                int level = s.level;
+                while (level > 0 && drop < threshold(level) - hysteresis) level--;
+                while (level < 2 && drop >= threshold(level + 1)) level++;
+                if (level > s.level) {
+                    String type = level == 2 ? DROP_SECONDARY : DROP_PRIMARY;
+                    if (offCooldown(s, type)) {
+                        raised.add(alert(ar, type, threshold(level),
+                                String.format("down %.2f%%, past the %.0f%% threshold", drop, threshold(level))));
+                    }
+                }
+                s.level = level;
+            }
+            boolean buy = BUY.equals(ar.signal);
+            if (buy && !s.buy && offCooldown(s, BUY)) {
+                raised.add(alert(ar, BUY, Double.NaN, "signal turned BUY: " + ar.reason));
+            }
+            s.buy = buy;
+        }
+        for (Alert a : raised) publish(a);
+    }
+
+    /**
+     * Most recent alerts, newest first.
+     */
+    public List<Alert> getRecent() {
+        synchronized (recent) {
+            return new ArrayList<Alert>(recent);
+        }
+    }
+
+    /**
+     * Id of the last alert raised; changes whenever {@link #getRecent()} does.
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    @Scheduled(fixedDelay = 3_600_000L)
+    public void evictIdle() {
+        Instant cutoff = Instant.now().minus(IDLE_EVICTION);
+        states.values().removeIf(s -> s.lastSeen.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Dispatcher d : dispatchers) d.executor.shutdownNow();
+    }
+
+    private State seed(AnalysisResult previous) {
+        State s = new State();
+        if (previous == null) return s;
+        if (previous.quote != null && !Double.isNaN(previous.quote.changePercent)) {
+            double drop = -previous.quote.changePercent;
+            s.level = drop >= secondaryThreshold ? 2 : drop >= primaryThreshold ? 1 : 0;
+        }
+        s.buy = BUY.equals(previous.signal);
+        return s;
+    }
+
+    private double threshold(int level) {
+        return level == 2 ? secondaryThreshold : primaryThreshold;
+    }
+
+    private boolean offCooldown(State s, String type) {
+        Instant now = Instant.now();
+        Instant last = s.lastRaised.get(type);
+        if (last != null && last.plus(cooldown).isAfter(now)) return false;
+        s.lastRaised.put(type, now);
+        return true;
+    }
+
+    private Alert alert(AnalysisResult ar, String type, double threshold, String detail) {
+        Alert a = new Alert();
+        a.symbol = ar.symbol;
+        a.type = type;
+        a.changePercent = ar.quote.changePercent;
+        a.threshold = threshold;
+        a.price = ar.quote.price;
+        a.signal = ar.signal;
+        a.message = ar.symbol + " " + detail;
+        a.quotedAt = ar.quote.asOf;
+        a.raisedAt = Instant.now();
+        return a;
+    }
+
+    private void publish(Alert a) {
+        meterRegistry.counter("monitor.alerts", "type", a.type).increment();
+        synchronized (recent) {
+            a.id = sequence.incrementAndGet();
+            recent.addFirst(a);
+            while (recent.size() > RECENT) recent.removeLast();
+        }
+        for (Dispatcher d : dispatchers) {
+            try {
+                d.executor.execute(() -> deliver(d, a));
+            } catch (RejectedExecutionException e) {
+                d.dropped.increment();
+            }
+        }
+    }
+
+    private void deliver(Dispatcher d, Alert a) {
+        try {
+            d.sink.deliver(a);
+            if (a.quotedAt != null) d.latency.record(Duration.between(a.quotedAt, Instant.now()));
+        } catch (Exception e) {
+            d.failed.increment();
+            log.warn("Alert delivery to {} failed for {}: {}", d.sink.name(), a.symbol, e.toString());
+        }
+    }
+}
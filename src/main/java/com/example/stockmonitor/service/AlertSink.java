@@ -0,0 +1,17 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.Alert;
+
+/**
+ * Destination for alerts raised by {@link AlertService}. Every sink bean is picked up and gets
+ * its own delivery thread, so a slow sink never holds up the scan or the other sinks.
+ */
+public interface AlertSink {
+
+    /**
+     * Short name used for the delivery thread and metric tags.
+     */
+    String name();
+
+    void deliver(Alert alert) throws Exception;
+}
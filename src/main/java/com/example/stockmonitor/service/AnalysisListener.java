@@ -0,0 +1,13 @@
+package com.example.stockmonitor.service;
+
+/**
+ * Notified by {@link AnalysisStore} each time a scan cycle's snapshot is published.
+ */
+public interface AnalysisListener {
+
+    /**
+     * @param previous the snapshot that was replaced
+     * @param current  the snapshot just published; its updated and removed sets say what changed
+     */
+    void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current);
+}
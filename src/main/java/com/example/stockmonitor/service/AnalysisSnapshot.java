@@ -0,0 +1,97 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of every analysis after one scan cycle, published by {@link AnalysisStore}.
+ * Keys are normalised symbols. {@link #getUpdated()} and {@link #getRemoved()} list what changed
+ * since the previous version; unchanged analyses are the same instances in both versions.
+ */
+public final class AnalysisSnapshot {
+
+    static final AnalysisSnapshot EMPTY = new AnalysisSnapshot(0L, Instant.EPOCH, null,
+            Collections.<String, AnalysisResult>emptyMap(), Collections.<String, Instant>emptyMap(),
+            Collections.<String>emptySet(), Collections.<String>emptySet());
+
+    private final long version;
+    private final Instant publishedAt;
+    private final GreedIndex greedIndex;
+    private final Map<String, AnalysisResult> bySymbol;
+    private final Map<String, Instant> refreshedAt;
+    private final Set<String> updated;
+    private final Set<String> removed;
+
+    AnalysisSnapshot(long version, Instant publishedAt, GreedIndex greedIndex, Map<String, AnalysisResult> bySymbol,
+                     Map<String, Instant> refreshedAt, Set<String> updated, Set<String> removed) {
+        this.version = version;
+        this.publishedAt = publishedAt;
+        this.greedIndex = greedIndex;
+        this.bySymbol = Collections.unmodifiableMap(bySymbol);
+        this.refreshedAt = Collections.unmodifiableMap(refreshedAt);
+        this.updated = Collections.unmodifiableSet(updated);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getPublishedAt() {
+        return publishedAt;
+    }
+
+    /**
+     * Greed index fetched in this cycle; null when the fetch failed.
+     */
+    public GreedIndex getGreedIndex() {
+        return greedIndex;
+    }
+
+    public AnalysisResult get(String symbol) {
+        return symbol == null ? null : bySymbol.get(AnalysisStore.normalize(symbol));
+    }
+
+    public Collection<AnalysisResult> values() {
+        return bySymbol.values();
+    }
+
+    public int size() {
+        return bySymbol.size();
+    }
+
+    /**
+     * When the symbol's analysis was last written.
+     */
+    public Instant getRefreshedAt(String symbol) {
+        return symbol == null ? null : refreshedAt.get(AnalysisStore.normalize(symbol));
+    }
+
+    /**
+     * Symbols written in this cycle, whether or not their content changed.
+     */
+    public Set<String> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Symbols evicted in this cycle for not being refreshed within the maximum age.
+     */
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    Map<String, AnalysisResult> asMap() {
+        return bySymbol;
+    }
+
+    Map<String, Instant> refreshTimes() {
+        return refreshedAt;
+    }
+}
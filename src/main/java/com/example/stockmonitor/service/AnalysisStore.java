@@ -0,0 +1,217 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisDiff;
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest analysis per symbol, keyed by normalised (trimmed, upper-case) symbol. Writes during a
+ * scan cycle are staged; {@link #completeCycle} merges them into a new immutable
+ * {@link AnalysisSnapshot}, evicts symbols not refreshed within {@code monitor.snapshot.max.age.minutes},
+ * and swaps it in with one atomic reference write. Readers always see one whole cycle, without
+ * locking. The last {@code monitor.snapshot.history} versions are kept for {@link #diff}.
+ * Analyses scanned by other shards come in through {@link #merge}, each as a snapshot of its own.
+ */
+@Component
+public class AnalysisStore {
+
+    private final Duration maxAge;
+    private final int historySize;
+    private final Counter evicted;
+
+    private final AtomicReference<AnalysisSnapshot> current = new AtomicReference<AnalysisSnapshot>(AnalysisSnapshot.EMPTY);
+    private final Map<String, AnalysisResult> pending = new ConcurrentHashMap<String, AnalysisResult>();
+    private final Map<String, Instant> pendingTimes = new ConcurrentHashMap<String, Instant>();
+    // newest last; guarded by this
+    private final Deque<AnalysisSnapshot> history = new ArrayDeque<AnalysisSnapshot>();
+    private final List<AnalysisListener> listeners = new CopyOnWriteArrayList<AnalysisListener>();
+
+    public AnalysisStore(@Value("${monitor.snapshot.max.age.minutes:60}") long maxAgeMinutes,
+                         @Value("${monitor.snapshot.history:10}") int historySize,
+                         MeterRegistry meterRegistry) {
+        this.maxAge = Duration.ofMinutes(Math.max(1, maxAgeMinutes));
+        this.historySize = Math.max(1, historySize);
+        this.evicted = Counter.builder("monitor.snapshot.evicted")
+                .description("Symbols dropped from the analysis snapshot for age")
+                .register(meterRegistry);
+        Gauge.builder("monitor.snapshot.version", current, r -> r.get().getVersion())
+                .register(meterRegistry);
+        Gauge.builder("monitor.snapshot.symbols", current, r -> r.get().size())
+                .register(meterRegistry);
+    }
+
+    public static String normalize(String symbol) {
+        return symbol == null ? null : symbol.trim().toUpperCase(Locale.ROOT);
+    }
+
+    public void addListener(AnalysisListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stages the analysis for the snapshot published at the end of the cycle.
+     */
+    public void put(AnalysisResult ar) {
+        String key = normalize(ar.symbol);
+        pending.put(key, ar);
+        pendingTimes.put(key, Instant.now());
+    }
+
+    /**
+     * Publishes analyses restored from disk as one snapshot, aged by their quote time.
+     */
+    public AnalysisSnapshot restore(Collection<AnalysisResult> analyses, GreedIndex greedIndex) {
+        Instant now = Instant.now();
+        for (AnalysisResult ar : analyses) {
+            String key = normalize(ar.symbol);
+            pending.put(key, ar);
+            pendingTimes.put(key, ar.quote != null && ar.quote.asOf != null ? ar.quote.asOf : now);
+        }
+        return completeCycle(greedIndex);
+    }
+
+    /**
+     * Ends a scan cycle: publishes the staged analyses as the next snapshot and notifies listeners.
+     */
+    public synchronized AnalysisSnapshot completeCycle(GreedIndex greedIndex) {
+        AnalysisSnapshot previous = current.get();
+        Map<String, AnalysisResult> bySymbol = new HashMap<String, AnalysisResult>(previous.asMap());
+        Map<String, Instant> refreshedAt = new HashMap<String, Instant>(previous.refreshTimes());
+        Set<String> updated = new HashSet<String>();
+        for (Iterator<Map.Entry<String, AnalysisResult>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, AnalysisResult> e = it.next();
+            it.remove();
+            Instant at = pendingTimes.remove(e.getKey());
+            bySymbol.put(e.getKey(), e.getValue());
+            refreshedAt.put(e.getKey(), at != null ? at : Instant.now());
+            updated.add(e.getKey());
+        }
+        return publish(previous, greedIndex, bySymbol, refreshedAt, updated);
+    }
+
+    /**
+     * Publishes analyses written elsewhere (by another shard) as the next snapshot, keeping the
+     * greed index and leaving the current cycle's staged writes alone. An analysis is taken only
+     * when it was written after the one held for its symbol.
+     *
+     * @param times when each analysis was written, by normalised symbol
+     * @return how many analyses were taken
+     */
+    public synchronized int merge(Collection<AnalysisResult> analyses, Map<String, Instant> times) {
+        AnalysisSnapshot previous = current.get();
+        Map<String, AnalysisResult> bySymbol = null;
+        Map<String, Instant> refreshedAt = null;
+        Set<String> updated = new HashSet<String>();
+        for (AnalysisResult ar : analyses) {
+            String key = normalize(ar.symbol);
+            Instant at = times.get(key);
+            Instant held = previous.refreshTimes().get(key);
+            if (at == null || (held != null && !at.isAfter(held))) continue;
+            if (bySymbol == null) {
+                bySymbol = new HashMap<String, AnalysisResult>(previous.asMap());
+                refreshedAt = new HashMap<String, Instant>(previous.refreshTimes());
+            }
+            bySymbol.put(key, ar);
+            refreshedAt.put(key, at);
+            updated.add(key);
+        }
+        if (bySymbol == null) return 0;
+        publish(previous, previous.getGreedIndex(), bySymbol, refreshedAt, updated);
+        return updated.size();
+    }
+
+    private AnalysisSnapshot publish(AnalysisSnapshot previous, GreedIndex greedIndex, Map<String, AnalysisResult> bySymbol,
+                                     Map<String, Instant> refreshedAt, Set<String> updated) {
+        Instant now = Instant.now();
+        Instant cutoff = now.minus(maxAge);
+        Set<String> removed = new HashSet<String>();
+        for (Iterator<Map.Entry<String, Instant>> it = refreshedAt.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Instant> e = it.next();
+            if (!e.getValue().isBefore(cutoff)) continue;
+            it.remove();
+            bySymbol.remove(e.getKey());
+            // a symbol restored already stale was never visible
+            if (previous.asMap().containsKey(e.getKey())) removed.add(e.getKey());
+            updated.remove(e.getKey());
+        }
+        evicted.increment(removed.size());
+
+        AnalysisSnapshot next = new AnalysisSnapshot(previous.getVersion() + 1, now, greedIndex,
+                bySymbol, refreshedAt, updated, removed);
+        current.set(next);
+        history.addLast(next);
+        while (history.size() > historySize) history.removeFirst();
+        for (AnalysisListener l : listeners) {
+            l.onSnapshotPublished(previous, next);
+        }
+        return next;
+    }
+
+    public AnalysisSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Changes from an earlier version to the current one. When that version is no longer kept (or
+     * unknown) the diff is marked full and lists every current analysis.
+     */
+    public AnalysisDiff diff(long sinceVersion) {
+        return diff(sinceVersion, current.get());
+    }
+
+    /**
+     * Changes from an earlier version to the given snapshot.
+     */
+    public AnalysisDiff diff(long sinceVersion, AnalysisSnapshot to) {
+        AnalysisSnapshot from = null;
+        synchronized (this) {
+            for (AnalysisSnapshot s : history) {
+                if (s.getVersion() == sinceVersion) from = s;
+            }
+        }
+        if (sinceVersion == 0L) from = AnalysisSnapshot.EMPTY;
+
+        AnalysisDiff d = new AnalysisDiff();
+        d.toVersion = to.getVersion();
+        d.updated = new ArrayList<AnalysisResult>();
+        d.removed = new ArrayList<String>();
+        if (from == null || from.getVersion() > to.getVersion()) {
+            d.fromVersion = sinceVersion;
+            d.full = true;
+            d.updated.addAll(to.values());
+            return d;
+        }
+        d.fromVersion = from.getVersion();
+        for (Map.Entry<String, AnalysisResult> e : to.asMap().entrySet()) {
+            if (from.asMap().get(e.getKey()) != e.getValue()) d.updated.add(e.getValue());
+        }
+        for (String key : from.asMap().keySet()) {
+            if (!to.asMap().containsKey(key)) d.removed.add(key);
+        }
+        return d;
+    }
+
+    public AnalysisResult get(String symbol) {
+        return current.get().get(symbol);
+    }
+
+    public Collection<AnalysisResult> values() {
+        return current.get().values();
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.Alert;
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes analysis deltas to dashboard clients over Server-Sent Events. For each published
+ * {@link AnalysisSnapshot}, only analyses whose serialised content changed are sent, then evicted
+ * symbols, hotspots, top picks and the greed index. Alerts are pushed as they are raised,
+ * without waiting for the cycle. Each client has its own queue keyed by symbol, so a slow reader gets the
+ * latest state per symbol rather than a growing backlog, and one sender task per client at most.
+ * A client whose sender has made no progress for the stall timeout is dropped; the browser
+ * reconnects and resynchronises from a fresh snapshot.
+ */
+@Service
+public class AnalysisStreamService implements AnalysisListener, AlertSink {
+
+    private static final int TOP_PICKS = 5;
+
+    private final AnalysisStore analysisStore;
+    private final AggregationService aggregationService;
+    private final ObjectMapper mapper;
+    private final ExecutorService sender;
+    private final long timeoutMillis;
+    private final long stallMillis;
+
+    private final Set<Client> clients = new CopyOnWriteArraySet<Client>();
+    private volatile GreedIndex greedIndex;
+
+    private static class Event {
+        final String name;
+        final Object data;
+
+        Event(String name, Object data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static class Client {
+        final SseEmitter emitter;
+        // latest event per key, in arrival order; guarded by this
+        final LinkedHashMap<String, Event> pending = new LinkedHashMap<String, Event>();
+        boolean draining;
+        boolean closed;
+        // when the sender last started or finished a write
+        long lastProgress;
+
+        Client(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    public AnalysisStreamService(AnalysisStore analysisStore, AggregationService aggregationService, ObjectMapper mapper,
+                                 @Value("${monitor.stream.sender.threads:4}") int senderThreads,
+                                 @Value("${monitor.stream.timeout.minutes:30}") long timeoutMinutes,
+                                 @Value("${monitor.stream.stall.seconds:60}") long stallSeconds) {
+        this.analysisStore = analysisStore;
+        this.aggregationService = aggregationService;
+        this.mapper = mapper;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.stallMillis = TimeUnit.SECONDS.toMillis(stallSeconds);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread t = new Thread(r, "sse-sender-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        analysisStore.addListener(this);
+    }
+
+    /**
+     * Opens a stream for one client, starting with the full current snapshot.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Client c = new Client(emitter);
+        emitter.onCompletion(() -> close(c));
+        emitter.onTimeout(() -> close(c));
+        emitter.onError(e -> close(c));
+        clients.add(c);
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        GreedIndex gi = greedIndex;
+        if (gi != null) enqueue(c, "greed", new Event("greed", gi));
+        enqueue(c, "hotspots", new Event("hotspots", aggregationService.getSectorHotspots()));
+        enqueue(c, "topPicks", new Event("topPicks", aggregationService.getTopPicks(TOP_PICKS)));
+        for (AnalysisResult ar : snapshot.values()) {
+            enqueue(c, "analysis:" + AnalysisStore.normalize(ar.symbol), new Event("analysis", ar));
+        }
+        enqueue(c, "cycle", new Event("cycle", cycleInfo(snapshot, snapshot.size())));
+        return emitter;
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    @Override
+    public void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current) {
+        List<AnalysisResult> changed = new ArrayList<AnalysisResult>();
+        for (String key : current.getUpdated()) {
+            AnalysisResult before = previous.get(key);
+            AnalysisResult after = current.get(key);
+            if (before == null || !sameContent(before, after)) changed.add(after);
+        }
+        GreedIndex gi = current.getGreedIndex();
+        GreedIndex previousGreed = greedIndex;
+        greedIndex = gi;
+        boolean greedChanged = gi != null && (previousGreed == null || previousGreed.value != gi.value
+                || !Objects.equals(previousGreed.label, gi.label));
+        if (clients.isEmpty()) return;
+
+        int size = changed.size() + current.getRemoved().size() + 4;
+        List<Event> events = new ArrayList<Event>(size);
+        List<String> keys = new ArrayList<String>(size);
+        for (AnalysisResult ar : changed) {
+            keys.add("analysis:" + AnalysisStore.normalize(ar.symbol));
+            events.add(new Event("analysis", ar));
+        }
+        for (String key : current.getRemoved()) {
+            // replaces any queued update for the symbol
+            keys.add("analysis:" + key);
+            events.add(new Event("removed", Collections.singletonMap("symbol", key)));
+        }
+        if (!changed.isEmpty() || !current.getRemoved().isEmpty()) {
+            keys.add("hotspots");
+            events.add(new Event("hotspots", aggregationService.getSectorHotspots()));
+            keys.add("topPicks");
+            events.add(new Event("topPicks", aggregationService.getTopPicks(TOP_PICKS)));
+        }
+        if (greedChanged) {
+            keys.add("greed");
+            events.add(new Event("greed", gi));
+        }
+        keys.add("cycle");
+        events.add(new Event("cycle", cycleInfo(current, changed.size())));
+        for (Client c : clients) {
+            for (int i = 0; i < events.size(); i++) {
+                enqueue(c, keys.get(i), events.get(i));
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "sse";
+    }
+
+    @Override
+    public void deliver(Alert alert) {
+        for (Client c : clients) {
+            enqueue(c, "alert:" + alert.id, new Event("alert", alert));
+        }
+    }
+
+    private static Map<String, Object> cycleInfo(AnalysisSnapshot snapshot, int changed) {
+        Map<String, Object> info = new LinkedHashMap<String, Object>();
+        info.put("version", snapshot.getVersion());
+        info.put("symbols", snapshot.size());
+        info.put("changed", changed);
+        return info;
+    }
+
+    private void enqueue(Client c, String key, Event event) {
+        boolean stalled;
+        synchronized (c) {
+            if (c.closed) return;
+            // re-insert so a replaced event moves behind everything queued before it
+            c.pending.remove(key);
+            c.pending.put(key, event);
+            stalled = c.draining && System.currentTimeMillis() - c.lastProgress > stallMillis;
+            if (!c.draining) {
+                c.draining = true;
+                c.lastProgress = System.currentTimeMillis();
+                sender.execute(() -> drain(c));
+            }
+        }
+        if (stalled) {
+            close(c);
+            c.emitter.complete();
+        }
+    }
+
+    private void drain(Client c) {
+        while (true) {
+            Event event;
+            synchronized (c) {
+                Iterator<Event> it = c.pending.values().iterator();
+                if (c.closed || !it.hasNext()) {
+                    c.draining = false;
+                    return;
+                }
+                event = it.next();
+                it.remove();
+                c.lastProgress = System.currentTimeMillis();
+            }
+            try {
+                c.emitter.send(SseEmitter.event().name(event.name).data(event.data));
+            } catch (IOException | IllegalStateException e) {
+                close(c);
+                return;
+            }
+        }
+    }
+
+    private void close(Client c) {
+        synchronized (c) {
+            c.closed = true;
+            c.pending.clear();
+        }
+        clients.remove(c);
+    }
+
+    /**
+     * Compares the analyses as they are serialised, so re-analysing an unchanged symbol sends
+     * nothing and the stream never differs from {@code /api/analyses}.
+     */
+    boolean sameContent(AnalysisResult a, AnalysisResult b) {
+        return mapper.valueToTree(a).equals(mapper.valueToTree(b));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Client c : clients) {
+            close(c);
+            c.emitter.complete();
+        }
+        sender.shutdownNow();
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.*;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Replays recorded bars through the streaming indicators, {@link ScreeningService#deriveSignal}
+ * and {@link TradePlanService} sizing, and reports how the BUY signal would have traded.
+ * <p>
+ * Symbols are replayed in parallel, each loaded, replayed and dropped before the next, so only
+ * the histories in flight are held. A symbol's history is cut into date chunks that also run in
+ * parallel. A chunk warms its indicators up on the {@link #WARMUP_BARS} bars before it and only
+ * opens trades inside its own range; a trade may run past the chunk end to its exit, but the next
+ * chunk does not know about it and starts flat, so results depend somewhat on the chunk length.
+ * Fundamentals are not recorded over time, so quality and valuation scores come from the
+ * symbol's latest analysis when there is one.
+ */
+@Service
+public class BacktestService {
+
+    static final int WARMUP_BARS = 300;
+    private static final int SCORE_BUCKETS = 10;
+    // regular-session bars fall on the same day under either EST or EDT with a fixed -5h shift
+    private static final long SESSION_OFFSET_SECONDS = 5 * 3600L;
+    private static final long DAY_SECONDS = 86400L;
+
+    private final TimeSeriesStore timeSeries;
+    private final ScreeningService screening;
+    private final TradePlanService tradePlans;
+    private final AnalysisStore analysisStore;
+
+    public BacktestService(TimeSeriesStore timeSeries, ScreeningService screening, TradePlanService tradePlans,
+                           AnalysisStore analysisStore) {
+        this.timeSeries = timeSeries;
+        this.screening = screening;
+        this.tradePlans = tradePlans;
+        this.analysisStore = analysisStore;
+    }
+
+    private static class Chunk {
+        final String symbol;
+        final BarSeries bars;
+        final int start;
+        final int end;
+        final double quality;
+        final double valuation;
+
+        Chunk(String symbol, BarSeries bars, int start, int end, double quality, double valuation) {
+            this.symbol = symbol;
+            this.bars = bars;
+            this.start = start;
+            this.end = end;
+            this.quality = quality;
+            this.valuation = valuation;
+        }
+    }
+
+    private static class Tally {
+        long bars;
+        int trades;
+        int wins;
+        double pnl;
+        double returnSum;
+        double grossProfit;
+        double grossLoss;
+        final int[] bucketTrades = new int[SCORE_BUCKETS];
+        final int[] bucketWins = new int[SCORE_BUCKETS];
+        final double[] bucketReturn = new double[SCORE_BUCKETS];
+        final double[] bucketPnl = new double[SCORE_BUCKETS];
+
+        void record(double score, double pnl, double ret) {
+            int b = Math.max(0, Math.min(SCORE_BUCKETS - 1, (int) Math.floor(score * SCORE_BUCKETS)));
+            trades++;
+            bucketTrades[b]++;
+            if (pnl > 0) {
+                wins++;
+                bucketWins[b]++;
+                grossProfit += pnl;
+            } else {
+                grossLoss -= pnl;
+            }
+            this.pnl += pnl;
+            returnSum += ret;
+            bucketPnl[b] += pnl;
+            bucketReturn[b] += ret;
+        }
+
+        Tally merge(Tally o) {
+            bars += o.bars;
+            trades += o.trades;
+            wins += o.wins;
+            pnl += o.pnl;
+            returnSum += o.returnSum;
+            grossProfit += o.grossProfit;
+            grossLoss += o.grossLoss;
+            for (int b = 0; b < SCORE_BUCKETS; b++) {
+                bucketTrades[b] += o.bucketTrades[b];
+                bucketWins[b] += o.bucketWins[b];
+                bucketReturn[b] += o.bucketReturn[b];
+                bucketPnl[b] += o.bucketPnl[b];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * @param symbols     symbols to replay; all symbols with stored bars when null or empty
+     * @param from        first bar time that may open a trade (epoch seconds)
+     * @param to          bars after this time (epoch seconds) are ignored
+     * @param capital     capital used to size every trade
+     * @param maxHoldBars bars after which an open trade is closed at the bar's close
+     * @param chunkDays   length of the date ranges replayed in parallel
+     */
+    public BacktestReport run(List<String> symbols, long from, long to, double capital, int maxHoldBars, int chunkDays) {
+        long started = System.currentTimeMillis();
+        List<String> universe = symbols == null || symbols.isEmpty() ? timeSeries.storedSymbols() : symbols;
+        long chunkSeconds = Math.max(1, chunkDays) * DAY_SECONDS;
+        int hold = Math.max(1, maxHoldBars);
+        Tally total = universe.parallelStream()
+                .map(symbol -> split(symbol, from, to, chunkSeconds).parallelStream()
+                        .map(c -> replay(c, capital, hold))
+                        .reduce(Tally::merge)
+                        .orElse(new Tally()))
+                .reduce(Tally::merge)
+                .orElse(new Tally());
+
+        BacktestReport r = new BacktestReport();
+        r.symbols = universe.size();
+        r.bars = total.bars;
+        r.trades = total.trades;
+        r.wins = total.wins;
+        r.hitRate = total.trades > 0 ? (double) total.wins / total.trades : 0.0;
+        r.totalPnl = total.pnl;
+        r.averageReturn = total.trades > 0 ? total.returnSum / total.trades : 0.0;
+        r.profitFactor = total.grossLoss > 0 ? total.grossProfit / total.grossLoss : 0.0;
+        r.scoreBuckets = new ArrayList<BacktestBucket>();
+        for (int b = 0; b < SCORE_BUCKETS; b++) {
+            if (total.bucketTrades[b] == 0) continue;
+            BacktestBucket bucket = new BacktestBucket();
+            bucket.minScore = (double) b / SCORE_BUCKETS;
+            bucket.maxScore = (double) (b + 1) / SCORE_BUCKETS;
+            bucket.trades = total.bucketTrades[b];
+            bucket.hitRate = (double) total.bucketWins[b] / total.bucketTrades[b];
+            bucket.averageReturn = total.bucketReturn[b] / total.bucketTrades[b];
+            bucket.totalPnl = total.bucketPnl[b];
+            r.scoreBuckets.add(bucket);
+        }
+        r.chunkDays = Math.max(1, chunkDays);
+        r.note = "Symbols are replayed in " + r.chunkDays + "-day chunks. A trade open at a chunk end is"
+                + " not seen by the next chunk, which may open another, so results vary with chunkDays.";
+        r.elapsedMillis = System.currentTimeMillis() - started;
+        return r;
+    }
+
+    private List<Chunk> split(String symbol, long from, long to, long chunkSeconds) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        // a plain read: a backtest must not compact the files the live scan appends to
+        BarSeries bars = timeSeries.readBars(symbol, Long.MIN_VALUE);
+        int end = bars.indexAtOrAfter(to == Long.MAX_VALUE ? to : to + 1);
+        bars.truncate(end);
+        int start = bars.indexAtOrAfter(from);
+        if (start >= bars.size()) return chunks;
+
+        AnalysisResult latest = analysisStore.get(symbol);
+        double quality = latest != null ? latest.qualityScore : screening.computeQualityScore(null);
+        double valuation = latest != null ? latest.valuationScore : screening.computeValuationScore(null);
+        while (start < bars.size()) {
+            int next = bars.indexAtOrAfter(bars.time(start) + chunkSeconds);
+            chunks.add(new Chunk(symbol, bars, start, next, quality, valuation));
+            start = next;
+        }
+        return chunks;
+    }
+
+    private Tally replay(Chunk c, double capital, int maxHoldBars) {
+        Tally tally = new Tally();
+        BarSeries bars = c.bars;
+        double[] opens = bars.opens();
+        double[] highs = bars.highs();
+        double[] lows = bars.lows();
+        double[] closes = bars.closes();
+        long[] volumes = bars.volumes();
+        int n = bars.size();
+
+        StreamingIndicators.State state = new StreamingIndicators.State();
+        Quote q = new Quote();
+        q.symbol = c.symbol;
+        long day = Long.MIN_VALUE;
+        double lastClose = Double.NaN;
+        double sessionReference = Double.NaN;
+        boolean wasBuy = false;
+        int busyUntil = -1;
+
+        for (int i = Math.max(0, c.start - WARMUP_BARS); i < c.end; i++) {
+            long d = Math.floorDiv(bars.time(i) - SESSION_OFFSET_SECONDS, DAY_SECONDS);
+            if (d != day) {
+                sessionReference = lastClose;
+                day = d;
+            }
+            state.update(closes[i], highs[i], lows[i], volumes[i]);
+            lastClose = closes[i];
+            if (i < c.start) continue;
+            tally.bars++;
+
+            TechnicalSnapshot t = state.toSnapshot();
+            q.price = closes[i];
+            q.changePercent = sessionReference > 0 ? (closes[i] / sessionReference - 1.0) * 100.0 : 0.0;
+            // the live scan only analyses symbols that are down on the day
+            boolean buy = q.changePercent <= 0 && "BUY".equals(screening.deriveSignal(q, t, null));
+            if (buy && !wasBuy && i > busyUntil && i + 1 < n) {
+                TradePlan plan = tradePlans.plan(c.symbol, capital, closes[i], t.atr14);
+                int last = Math.min(n - 1, i + maxHoldBars);
+                int j = i + 1;
+                double exit = Double.NaN;
+                for (; j <= last; j++) {
+                    // a bar touching both levels is counted as a stop
+                    if (lows[j] <= plan.stopLoss) { exit = Math.min(opens[j], plan.stopLoss); break; }
+                    if (highs[j] >= plan.takeProfit) { exit = Math.max(opens[j], plan.takeProfit); break; }
+                }
+                if (Double.isNaN(exit)) {
+                    j = last;
+                    exit = closes[last];
+                }
+                double pnl = plan.quantity * (exit - plan.suggestedEntry);
+                double ret = (exit - plan.suggestedEntry) / plan.suggestedEntry;
+                double score = AggregationService.compositeScore(c.quality, c.valuation, screening.computeMomentumScore(t));
+                tally.record(score, pnl, ret);
+                busyUntil = j;
+            }
+            wasBuy = buy;
+        }
+        return tally;
+    }
+}
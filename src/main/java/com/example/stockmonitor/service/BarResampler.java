@@ -0,0 +1,181 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds higher timeframe OHLCV bars (by default 15m, 1h and 1d) from a symbol's intraday series,
+ * so multi-timeframe indicators need no extra chart requests. Intraday buckets are aligned to the
+ * 9:30 ET session open and daily buckets to the exchange date. Per symbol, the resampled series are
+ * kept and only the last, possibly partial, bucket onwards is rebuilt when new bars arrive.
+ * <p>
+ * A bucket the source starts partway into (after its start, or after the session open for a day)
+ * is left out, so that a trimmed head gives the same series whether built incrementally or afresh.
+ */
+@Component
+public class BarResampler {
+
+    private static final ZoneId EXCHANGE_ZONE = ZoneId.of("America/New_York");
+    private static final long SESSION_OPEN_SECONDS = 9 * 3600 + 30 * 60;
+    private static final Duration IDLE_EVICTION = Duration.ofDays(1);
+
+    private final List<Timeframe> timeframes = new ArrayList<Timeframe>();
+    private final Map<String, Frames> frames = new ConcurrentHashMap<String, Frames>();
+
+    private static final class Timeframe {
+        final String label;
+        final long seconds; // 0 for daily
+
+        Timeframe(String label, long seconds) {
+            this.label = label;
+            this.seconds = seconds;
+        }
+    }
+
+    private static class Frames {
+        final BarSeries[] series;
+        long sourceFirst = Long.MAX_VALUE;
+        volatile Instant lastAccess = Instant.now();
+
+        Frames(int count) {
+            series = new BarSeries[count];
+            for (int i = 0; i < count; i++) series[i] = new BarSeries(0);
+        }
+    }
+
+    public BarResampler(@Value("${monitor.timeframes:15m,1h,1d}") String timeframes) {
+        for (String label : timeframes.split(",")) {
+            String l = label.trim().toLowerCase(Locale.ROOT);
+            if (!l.isEmpty()) this.timeframes.add(parse(l));
+        }
+    }
+
+    /**
+     * Brings the symbol's resampled series up to date with {@code bars} and returns a copy of each,
+     * keyed by timeframe label. The last bar of each is the bucket still forming.
+     */
+    public Map<String, BarSeries> resample(String symbol, BarSeries bars) {
+        Map<String, BarSeries> result = new LinkedHashMap<String, BarSeries>();
+        if (timeframes.isEmpty()) return result;
+        Frames f = frames.computeIfAbsent(symbol, k -> new Frames(timeframes.size()));
+        f.lastAccess = Instant.now();
+        synchronized (f) {
+            boolean reset = bars.isEmpty() || bars.firstTime() < f.sourceFirst;
+            f.sourceFirst = bars.isEmpty() ? Long.MAX_VALUE : bars.firstTime();
+            SessionClock clock = new SessionClock();
+            for (int i = 0; i < timeframes.size(); i++) {
+                Timeframe tf = timeframes.get(i);
+                BarSeries out = f.series[i];
+                if (reset) out.truncate(0);
+                update(out, bars, tf, clock);
+                result.put(tf.label, out.copy());
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelay = 3_600_000L)
+    public void evictIdle() {
+        Instant cutoff = Instant.now().minus(IDLE_EVICTION);
+        frames.values().removeIf(f -> f.lastAccess.isBefore(cutoff));
+    }
+
+    /**
+     * Rebuilds {@code out} from its last bucket onwards. Buckets before the head of the source,
+     * and the bucket it starts partway into, are dropped, so the resampled series covers the same
+     * range.
+     */
+    private static void update(BarSeries out, BarSeries src, Timeframe tf, SessionClock clock) {
+        if (src.isEmpty()) return;
+        long head = bucketStart(src.firstTime(), tf, clock);
+        long headOpen = tf.seconds == 0 ? head + SESSION_OPEN_SECONDS : head;
+        boolean partialHead = src.firstTime() > headOpen;
+        out.dropHead(out.indexAtOrAfter(partialHead ? head + 1 : head));
+        int from = 0;
+        if (!out.isEmpty()) {
+            long last = out.lastTime();
+            if (src.firstTime() > last) {
+                // the source no longer holds the start of the last bucket
+                out.truncate(0);
+            } else {
+                out.truncate(out.size() - 1);
+                from = src.indexAtOrAfter(last);
+            }
+        }
+
+        int n = src.size();
+        long bucket = Long.MIN_VALUE;
+        double open = 0.0;
+        double high = 0.0;
+        double low = 0.0;
+        double close = 0.0;
+        long volume = 0L;
+        for (int i = from; i < n; i++) {
+            long b = bucketStart(src.time(i), tf, clock);
+            if (partialHead && b == head) continue;
+            if (b != bucket) {
+                if (bucket != Long.MIN_VALUE) out.add(bucket, open, high, low, close, volume);
+                bucket = b;
+                open = src.open(i);
+                high = src.high(i);
+                low = src.low(i);
+                volume = 0L;
+            } else {
+                if (src.high(i) > high) high = src.high(i);
+                if (src.low(i) < low) low = src.low(i);
+            }
+            close = src.close(i);
+            volume += src.volume(i);
+        }
+        if (bucket != Long.MIN_VALUE) out.add(bucket, open, high, low, close, volume);
+    }
+
+    private static long bucketStart(long time, Timeframe tf, SessionClock clock) {
+        long day = clock.dayStart(time);
+        if (tf.seconds == 0) return day;
+        long open = day + SESSION_OPEN_SECONDS;
+        return open + Math.floorDiv(time - open, tf.seconds) * tf.seconds;
+    }
+
+    private static Timeframe parse(String label) {
+        try {
+            long n = Long.parseLong(label.substring(0, label.length() - 1));
+            char unit = label.charAt(label.length() - 1);
+            if (n > 0 && unit == 'm') return new Timeframe(label, n * 60);
+            if (n > 0 && unit == 'h') return new Timeframe(label, n * 3600);
+            if (n == 1 && unit == 'd') return new Timeframe(label, 0);
+        } catch (RuntimeException ignored) {
+        }
+        throw new IllegalArgumentException("Unsupported timeframe '" + label + "'; use Nm, Nh or 1d");
+    }
+
+    /**
+     * Exchange-local midnight of a time, remembered for the day last asked about since bars come
+     * in time order.
+     */
+    private static final class SessionClock {
+        private long dayStart = Long.MAX_VALUE;
+        private long nextDay = Long.MIN_VALUE;
+
+        long dayStart(long time) {
+            if (time >= dayStart && time < nextDay) return dayStart;
+            LocalDate date = Instant.ofEpochSecond(time).atZone(EXCHANGE_ZONE).toLocalDate();
+            dayStart = date.atStartOfDay(EXCHANGE_ZONE).toEpochSecond();
+            nextDay = date.plusDays(1).atStartOfDay(EXCHANGE_ZONE).toEpochSecond();
+            return dayStart;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-symbol rolling intraday bar series. The full range is downloaded once; later refreshes
+ * only request the tail since the last stored bar and merge it by timestamp. Downloaded bars are
+ * appended to {@link TimeSeriesStore}, which also seeds a symbol's series after a restart.
+ */
+@Component
+public class BarStore {
+
+    // the series head is trimmed in steps of this size rather than on every new bar
+    private static final Duration TRIM_SLACK = Duration.ofDays(1);
+    private static final Duration IDLE_EVICTION = Duration.ofDays(1);
+
+    private final MarketDataProvider provider;
+    private final TimeSeriesStore timeSeries;
+    private final Map<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+    @Value("${monitor.chart.range:1mo}")
+    private String chartRange;
+    @Value("${monitor.chart.interval:5m}")
+    private String chartInterval;
+
+    private static class Series {
+        BarSeries bars = new BarSeries(0);
+        volatile Instant lastAccess = Instant.now();
+    }
+
+    public BarStore(MarketDataProvider provider, TimeSeriesStore timeSeries) {
+        this.provider = provider;
+        this.timeSeries = timeSeries;
+    }
+
+    /**
+     * Refreshes the symbol's series and returns a copy of it.
+     */
+    public BarSeries getBars(String symbol) throws IOException {
+        Series s = series.computeIfAbsent(symbol, k -> new Series());
+        s.lastAccess = Instant.now();
+        synchronized (s) {
+            if (s.bars.isEmpty()) s.bars = loadStored(symbol);
+            if (s.bars.isEmpty()) {
+                s.bars = provider.getChart(symbol, chartRange, chartInterval);
+                timeSeries.appendBars(symbol, s.bars, 0);
+            } else {
+                long to = Instant.now().getEpochSecond();
+                BarSeries fresh = provider.getChart(symbol, s.bars.lastTime(), to, chartInterval);
+                merge(s.bars, fresh);
+                timeSeries.appendBars(symbol, fresh, 0);
+            }
+            trim(s.bars);
+            return s.bars.copy();
+        }
+    }
+
+    @Scheduled(fixedDelay = 3_600_000L)
+    public void evictIdle() {
+        Instant cutoff = Instant.now().minus(IDLE_EVICTION);
+        series.values().removeIf(s -> s.lastAccess.isBefore(cutoff));
+    }
+
+    /**
+     * Bars kept on disk for the chart range, or an empty series when the newest of them is older
+     * than the range and a full download is needed anyway.
+     */
+    private BarSeries loadStored(String symbol) {
+        Duration range = rangeDuration(chartRange);
+        if (range == null) return new BarSeries(0);
+        long since = Instant.now().minus(range).getEpochSecond();
+        BarSeries stored = timeSeries.loadBars(symbol, since);
+        return stored;
+    }
+
+    /**
+     * Replaces every stored bar at or after the first fresh bar, so a revised partial bar wins.
+     */
+    private void merge(BarSeries bars, BarSeries fresh) {
+        if (fresh.isEmpty()) return;
+        bars.truncate(bars.indexAtOrAfter(fresh.firstTime()));
+        bars.addAll(fresh);
+    }
+
+    private void trim(BarSeries bars) {
+        Duration range = rangeDuration(chartRange);
+        if (range == null || bars.isEmpty()) return;
+        long newest = bars.lastTime();
+        if (bars.firstTime() >= newest - range.plus(TRIM_SLACK).getSeconds()) return;
+        bars.dropHead(bars.indexAtOrAfter(newest - range.getSeconds()));
+    }
+
+    /**
+     * Converts a Yahoo range such as 5d, 1mo or 2y to a duration; null for ytd/max.
+     */
+    static Duration rangeDuration(String range) {
+        if (range == null) return null;
+        try {
+            if (range.endsWith("mo")) return Duration.ofDays(30L * Long.parseLong(range.substring(0, range.length() - 2)));
+            if (range.endsWith("d")) return Duration.ofDays(Long.parseLong(range.substring(0, range.length() - 1)));
+            if (range.endsWith("y")) return Duration.ofDays(365L * Long.parseLong(range.substring(0, range.length() - 1)));
+        } catch (NumberFormatException ignored) {
+        }
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.stockmonitor.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates through a directory every instance can reach ({@code monitor.shard.dir}, e.g. an
+ * NFS mount or a volume shared by containers on one host):
+ * <ul>
+ *   <li>{@code members/NODE} - the node's last heartbeat, in epoch milliseconds</li>
+ *   <li>{@code results/NODE.json} - the node's published results</li>
+ *   <li>{@code shard.lock} - locked while members are added, refreshed or dropped</li>
+ * </ul>
+ * Files are written to a temporary name and moved into place, so readers never see half a file.
+ * Heartbeats are compared with the local clock, so hosts need roughly synchronised clocks.
+ */
+@Component
+@ConditionalOnProperty(name = "monitor.shard.backend", havingValue = "file")
+public class FileShardCoordinator implements ShardCoordinator {
+
+    private static final String RESULTS_SUFFIX = ".json";
+
+    private final Path membersDir;
+    private final Path resultsDir;
+    private final Path lockFile;
+
+    public FileShardCoordinator(@Value("${monitor.shard.dir:shards}") String dir) throws IOException {
+        Path root = Paths.get(dir);
+        this.membersDir = root.resolve("members");
+        this.resultsDir = root.resolve("results");
+        this.lockFile = root.resolve("shard.lock");
+        Files.createDirectories(membersDir);
+        Files.createDirectories(resultsDir);
+    }
+
+    @Override
+    public String name() {
+        return "file";
+    }
+
+    @Override
+    public synchronized List<String> heartbeat(String nodeId, Duration timeout) throws IOException {
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = ch.lock()) {
+            long now = System.currentTimeMillis();
+            writeAtomically(membersDir.resolve(nodeId), Long.toString(now).getBytes(StandardCharsets.UTF_8));
+            long cutoff = now - timeout.toMillis();
+            List<String> live = new ArrayList<String>();
+            try (DirectoryStream<Path> members = Files.newDirectoryStream(membersDir)) {
+                for (Path p : members) {
+                    String member = p.getFileName().toString();
+                    if (member.startsWith(".")) continue;
+                    long last = lastHeartbeat(p);
+                    if (last >= cutoff) live.add(member);
+                    else if (last >= 0) Files.deleteIfExists(p);
+                }
+            }
+            // results outlive their node by one timeout, so peers can still merge them
+            try (DirectoryStream<Path> results = Files.newDirectoryStream(resultsDir, "*" + RESULTS_SUFFIX)) {
+                for (Path p : results) {
+                    String name = p.getFileName().toString();
+                    String member = name.substring(0, name.length() - RESULTS_SUFFIX.length());
+                    if (!live.contains(member) && Files.getLastModifiedTime(p).toMillis() < cutoff) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+            Collections.sort(live);
+            return live;
+        }
+    }
+
+    @Override
+    public synchronized void leave(String nodeId) throws IOException {
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = ch.lock()) {
+            Files.deleteIfExists(membersDir.resolve(nodeId));
+        }
+    }
+
+    @Override
+    public void publish(String nodeId, byte[] results) throws IOException {
+        writeAtomically(resultsFile(nodeId), results);
+    }
+
+    @Override
+    public long resultsVersion(String nodeId) throws IOException {
+        try {
+            return Files.getLastModifiedTime(resultsFile(nodeId)).to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException e) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public byte[] readResults(String nodeId) throws IOException {
+        try {
+            return Files.readAllBytes(resultsFile(nodeId));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path resultsFile(String nodeId) {
+        return resultsDir.resolve(nodeId + RESULTS_SUFFIX);
+    }
+
+    // -1 when the member has just left; garbage counts as a heartbeat at the epoch
+    private static long lastHeartbeat(Path member) {
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(member), StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        } catch (IOException e) {
+            return -1L;
+        }
+    }
+
+    private static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path tmp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,16 +1,40 @@
 package com.example.stockmonitor.service;
 
+import com.example.stockmonitor.model.BarSeries;
 import com.example.stockmonitor.model.StockModels.IntradayBar;
 import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class IndicatorService {
 
+    private static final Duration IDLE_EVICTION = Duration.ofDays(1);
+
+    private final Map<String, StreamingIndicators> streaming = new ConcurrentHashMap<String, StreamingIndicators>();
+
+    /**
+     * Same result as {@link #computeTechnicalSnapshot(BarSeries)}, but keeps per-symbol state so only
+     * bars added since the previous call are processed.
+     */
+    public TechnicalSnapshot computeTechnicalSnapshot(String symbol, BarSeries bars) {
+        return streaming.computeIfAbsent(symbol, k -> new StreamingIndicators()).snapshot(bars);
+    }
+
+    @Scheduled(fixedDelay = 3_600_000L)
+    public void evictIdle() {
+        Instant cutoff = Instant.now().minus(IDLE_EVICTION);
+        streaming.values().removeIf(s -> s.lastAccess.isBefore(cutoff));
+    }
+
     public TechnicalSnapshot computeTechnicalSnapshot(List<IntradayBar> bars) {
         TechnicalSnapshot t = new TechnicalSnapshot();
         if (bars == null || bars.size() < 15) {
@@ -111,4 +135,103 @@ public class IndicatorService {
         double last = values.get(values.size() - 1);
         return (last - mean) / std;
     }
-}
\ No newline at end of file
+
+    public TechnicalSnapshot computeTechnicalSnapshot(BarSeries bars) {
+        TechnicalSnapshot t = new TechnicalSnapshot();
+        if (bars == null || bars.size() < 15) {
+            return t;
+        }
+        int n = bars.size();
+        t.rsi14 = rsi(bars.closes(), n, 14);
+        t.ema20 = ema(bars.closes(), n, 20);
+        t.ema50 = ema(bars.closes(), n, 50);
+        t.atr14 = atr(bars, 14);
+        t.obv = obv(bars);
+        t.volumeZScore = zscore(bars.volumes(), n, Math.min(100, n));
+        return t;
+    }
+
+    public double rsi(double[] closes, int n, int period) {
+        if (n < period + 1) return Double.NaN;
+        double gain = 0.0;
+        double loss = 0.0;
+        for (int i = 1; i <= period; i++) {
+            double change = closes[i] - closes[i - 1];
+            if (change >= 0) gain += change; else loss -= change;
+        }
+        double avgGain = gain / period;
+        double avgLoss = loss / period;
+        for (int i = period + 1; i < n; i++) {
+            double change = closes[i] - closes[i - 1];
+            double g = Math.max(0, change);
+            double l = Math.max(0, -change);
+            avgGain = (avgGain * (period - 1) + g) / period;
+            avgLoss = (avgLoss * (period - 1) + l) / period;
+        }
+        if (avgLoss == 0) return 100.0;
+        double rs = avgGain / avgLoss;
+        return 100.0 - (100.0 / (1.0 + rs));
+    }
+
+    public double ema(double[] values, int n, int period) {
+        if (n == 0) return Double.NaN;
+        double k = 2.0 / (period + 1.0);
+        double ema = values[0];
+        for (int i = 1; i < n; i++) {
+            ema = values[i] * k + ema * (1.0 - k);
+        }
+        return ema;
+    }
+
+    public double atr(BarSeries bars, int period) {
+        int n = bars.size();
+        if (n < period + 1) return Double.NaN;
+        double[] highs = bars.highs();
+        double[] lows = bars.lows();
+        double[] closes = bars.closes();
+        // Wilder's smoothing, seeded with the mean of the first period true ranges
+        double atr = 0.0;
+        for (int i = 1; i <= period; i++) atr += trueRange(highs[i], lows[i], closes[i - 1]);
+        atr /= period;
+        for (int i = period + 1; i < n; i++) {
+            atr = (atr * (period - 1) + trueRange(highs[i], lows[i], closes[i - 1])) / period;
+        }
+        return atr;
+    }
+
+    public double obv(BarSeries bars) {
+        int n = bars.size();
+        if (n == 0) return 0.0;
+        double[] closes = bars.closes();
+        long[] volumes = bars.volumes();
+        double obv = 0.0;
+        for (int i = 1; i < n; i++) {
+            double change = closes[i] - closes[i - 1];
+            if (change > 0) obv += volumes[i];
+            else if (change < 0) obv -= volumes[i];
+        }
+        return obv;
+    }
+
+    public double zscore(long[] values, int size, int window) {
+        if (size == 0) return Double.NaN;
+        int n = Math.min(window, size);
+        double mean = 0.0;
+        for (int i = size - n; i < size; i++) mean += values[i];
+        mean /= n;
+        double var = 0.0;
+        for (int i = size - n; i < size; i++) {
+            double d = values[i] - mean;
+            var += d * d;
+        }
+        var /= n;
+        double std = Math.sqrt(var);
+        if (std == 0) return 0.0;
+        double last = values[size - 1];
+        return (last - mean) / std;
+    }
+
+    private static double trueRange(double high, double low, double prevClose) {
+        return Math.max(high - low, Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose)));
+    }
+}
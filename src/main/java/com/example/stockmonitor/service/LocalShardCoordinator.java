@@ -0,0 +1,73 @@
+package com.example.stockmonitor.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory stand-in for a shared backend: the only member is this instance, so it owns every
+ * symbol. The default, and what a single monitor runs with.
+ */
+@Component
+@ConditionalOnProperty(name = "monitor.shard.backend", havingValue = "local", matchIfMissing = true)
+public class LocalShardCoordinator implements ShardCoordinator {
+
+    private final Map<String, Instant> heartbeats = new ConcurrentHashMap<String, Instant>();
+    private final Map<String, byte[]> results = new ConcurrentHashMap<String, byte[]>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public List<String> heartbeat(String nodeId, Duration timeout) {
+        Instant now = Instant.now();
+        heartbeats.put(nodeId, now);
+        Instant cutoff = now.minus(timeout);
+        List<String> live = new ArrayList<String>();
+        for (Map.Entry<String, Instant> e : heartbeats.entrySet()) {
+            if (e.getValue().isBefore(cutoff)) {
+                heartbeats.remove(e.getKey());
+                results.remove(e.getKey());
+                versions.remove(e.getKey());
+            } else {
+                live.add(e.getKey());
+            }
+        }
+        Collections.sort(live);
+        return live;
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        heartbeats.remove(nodeId);
+    }
+
+    @Override
+    public void publish(String nodeId, byte[] data) {
+        results.put(nodeId, data);
+        versions.put(nodeId, sequence.incrementAndGet());
+    }
+
+    @Override
+    public long resultsVersion(String nodeId) {
+        Long v = versions.get(nodeId);
+        return v == null ? -1L : v;
+    }
+
+    @Override
+    public byte[] readResults(String nodeId) {
+        return results.get(nodeId);
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.Alert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LogAlertSink implements AlertSink {
+
+    private static final Logger log = LoggerFactory.getLogger(LogAlertSink.class);
+
+    @Override
+    public String name() {
+        return "log";
+    }
+
+    @Override
+    public void deliver(Alert alert) {
+        log.info("Alert {} {}: {}", alert.type, alert.symbol, alert.message);
+    }
+}
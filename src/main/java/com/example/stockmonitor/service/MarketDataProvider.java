@@ -0,0 +1,46 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of screener, quoteSummary and chart data. Results use the keys produced by
+ * {@link YahooResponseParser}. The active provider is picked with {@code monitor.provider}:
+ * {@code yahoo} (default) or {@code replay}.
+ */
+public interface MarketDataProvider {
+
+    List<Map<String, Object>> getTopLosers(int count) throws IOException;
+
+    /**
+     * Fast-moving quote fields (price, day range, volume).
+     */
+    Map<String, Object> getQuoteModules(String symbol) throws IOException;
+
+    /**
+     * Slow-moving profile and fundamentals fields.
+     */
+    Map<String, Object> getProfileModules(String symbol) throws IOException;
+
+    BarSeries getChart(String symbol, String range, String interval) throws IOException;
+
+    /**
+     * Bars between two epoch-second timestamps, used to pull only the tail of a series.
+     */
+    BarSeries getChart(String symbol, long period1, long period2, String interval) throws IOException;
+
+    /**
+     * Total number of requests served since startup.
+     */
+    long getRequestCount();
+
+    /**
+     * Whether the scan should only run during US market hours.
+     */
+    default boolean followsMarketHours() {
+        return true;
+    }
+}
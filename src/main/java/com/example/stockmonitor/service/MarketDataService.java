@@ -1,8 +1,13 @@
 package com.example.stockmonitor.service;
 
+import com.example.stockmonitor.config.CacheConfig;
+import com.example.stockmonitor.model.BarSeries;
 import com.example.stockmonitor.model.StockModels.*;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -12,22 +17,38 @@ import java.util.*;
 @Service
 public class MarketDataService {
 
-    private final YahooFinanceClient yahoo;
-    private final IndicatorService indicators;
+    private static final Logger log = LoggerFactory.getLogger(MarketDataService.class);
 
-    @Value("${monitor.chart.range:1mo}")
-    private String chartRange;
-    @Value("${monitor.chart.interval:5m}")
-    private String chartInterval;
+    private final MarketDataProvider provider;
+    private final IndicatorService indicators;
+    private final BarStore barStore;
+    private final BarResampler resampler;
+    private final Cache quoteCache;
+    private final MeterRegistry meterRegistry;
 
-    public MarketDataService(YahooFinanceClient yahoo, IndicatorService indicators) {
-        this.yahoo = yahoo;
+    public MarketDataService(MarketDataProvider provider, IndicatorService indicators, BarStore barStore,
+                             BarResampler resampler, CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.provider = provider;
         this.indicators = indicators;
+        this.barStore = barStore;
+        this.resampler = resampler;
+        this.quoteCache = cacheManager.getCache(CacheConfig.QUOTES);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Failed upstream fetches still degrade to empty results, but are logged and counted as
+     * {@code monitor.errors} by source.
+     */
+    private void failed(String source, String symbol, IOException e) {
+        meterRegistry.counter("monitor.errors", "source", source).increment();
+        if (symbol == null) log.warn("{} fetch failed: {}", source, e.toString());
+        else log.warn("{} fetch failed for {}: {}", source, symbol, e.toString());
     }
 
     public List<Candidate> fetchTopLoserCandidates(int limit) {
         try {
-            List<Map<String, Object>> items = yahoo.getTopLosers(limit);
+            List<Map<String, Object>> items = provider.getTopLosers(limit);
             List<Candidate> result = new ArrayList<Candidate>();
             for (Map<String, Object> m : items) {
                 Candidate c = new Candidate();
@@ -39,98 +60,159 @@ public class MarketDataService {
             }
             return result;
         } catch (IOException e) {
+            failed("topLosers", null, e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Fills ticker info, quote and fundamentals from one pass over the quote and profile
+     * quoteSummary modules, each served from its own cache tier.
+     */
+    public SymbolSnapshot fetchSnapshot(String symbol) {
+        try {
+            Map<String, Object> m = quoteSummary(symbol);
+            SymbolSnapshot s = new SymbolSnapshot();
+            s.symbol = symbol;
+            s.info = toTickerInfo(symbol, m);
+            s.quote = toQuote(symbol, m);
+            s.fundamentals = toFundamentals(m);
+            return s;
+        } catch (IOException e) {
+            failed("quoteSummary", symbol, e);
+            return null;
+        }
+    }
+
     public TickerInfo fetchTickerInfo(String symbol) {
         try {
-            Map<String, Object> m = yahoo.getQuoteSummary(symbol);
-            TickerInfo info = new TickerInfo();
-            info.symbol = symbol;
-            info.shortName = (String) m.get("shortName");
-            info.longName = (String) m.get("longName");
-            info.sector = (String) m.get("sector");
-            info.industry = (String) m.get("industry");
-            info.exchange = (String) m.get("exchange");
-            Number mc = (Number) m.get("marketCap");
-            info.marketCap = mc == null ? 0L : mc.longValue();
-            return info;
+            return toTickerInfo(symbol, quoteSummary(symbol));
         } catch (IOException e) {
+            failed("quoteSummary", symbol, e);
             return null;
         }
     }
 
     public Quote fetchQuote(String symbol) {
         try {
-            Map<String, Object> m = yahoo.getQuoteSummary(symbol);
-            Quote q = new Quote();
-            q.symbol = symbol;
-            Number price = (Number) m.get("regularMarketPrice");
-            q.price = price == null ? Double.NaN : price.doubleValue();
-            Number chg = (Number) m.get("regularMarketChangePercent");
-            q.changePercent = chg == null ? Double.NaN : chg.doubleValue();
-            Number pc = (Number) m.get("previousClose");
-            q.previousClose = pc == null ? Double.NaN : pc.doubleValue();
-            Number vol = (Number) m.get("regularMarketVolume");
-            q.volume = vol == null ? 0L : vol.longValue();
-            Number avgVol = (Number) m.get("averageDailyVolume3Month");
-            q.averageVolume = avgVol == null ? 0L : avgVol.longValue();
-            Number open = (Number) m.get("open");
-            q.open = open == null ? Double.NaN : open.doubleValue();
-            Number dayLow = (Number) m.get("dayLow");
-            q.dayLow = dayLow == null ? Double.NaN : dayLow.doubleValue();
-            Number dayHigh = (Number) m.get("dayHigh");
-            q.dayHigh = dayHigh == null ? Double.NaN : dayHigh.doubleValue();
-            Number mc = (Number) m.get("marketCap");
-            q.marketCap = mc == null ? 0L : mc.longValue();
-            q.asOf = Instant.now();
-            return q;
+            return toQuote(symbol, quoteSummary(symbol));
         } catch (IOException e) {
+            failed("quoteSummary", symbol, e);
             return null;
         }
     }
 
     public Fundamentals fetchFundamentals(String symbol) {
         try {
-            Map<String, Object> m = yahoo.getQuoteSummary(symbol);
-            Fundamentals f = new Fundamentals();
-            f.peRatio = (Double) m.get("peRatio");
-            f.pbRatio = (Double) m.get("pbRatio");
-            f.profitMargins = (Double) m.get("profitMargins");
-            f.debtToEquity = (Double) m.get("debtToEquity");
-            f.revenueGrowth = (Double) m.get("revenueGrowth");
-            f.freeCashflow = (Double) m.get("freeCashflow");
-            f.operatingMargins = (Double) m.get("operatingMargins");
-            f.returnOnEquity = (Double) m.get("returnOnEquity");
-            return f;
+            return toFundamentals(quoteSummary(symbol));
         } catch (IOException e) {
+            failed("quoteSummary", symbol, e);
             return null;
         }
     }
 
-    public List<IntradayBar> fetchChartBars(String symbol) {
+    /**
+     * Quote from the response cache only; never calls upstream. Null when nothing is cached.
+     */
+    @SuppressWarnings("unchecked")
+    public Quote cachedQuote(String symbol) {
+        Map<String, Object> m = quoteCache == null ? null : quoteCache.get(symbol, Map.class);
+        return m == null ? null : toQuote(symbol, m);
+    }
+
+    private Map<String, Object> quoteSummary(String symbol) throws IOException {
+        Map<String, Object> merged = new HashMap<String, Object>(provider.getProfileModules(symbol));
+        for (Map.Entry<String, Object> e : provider.getQuoteModules(symbol).entrySet()) {
+            if (e.getValue() != null) merged.put(e.getKey(), e.getValue());
+        }
+        return merged;
+    }
+
+    private TickerInfo toTickerInfo(String symbol, Map<String, Object> m) {
+        TickerInfo info = new TickerInfo();
+        info.symbol = symbol;
+        info.shortName = (String) m.get("shortName");
+        info.longName = (String) m.get("longName");
+        info.sector = (String) m.get("sector");
+        info.industry = (String) m.get("industry");
+        info.exchange = (String) m.get("exchange");
+        Number mc = (Number) m.get("marketCap");
+        info.marketCap = mc == null ? 0L : mc.longValue();
+        return info;
+    }
+
+    private Quote toQuote(String symbol, Map<String, Object> m) {
+        Quote q = new Quote();
+        q.symbol = symbol;
+        Number price = (Number) m.get("regularMarketPrice");
+        q.price = price == null ? Double.NaN : price.doubleValue();
+        Number chg = (Number) m.get("regularMarketChangePercent");
+        q.changePercent = chg == null ? Double.NaN : chg.doubleValue();
+        Number pc = (Number) m.get("previousClose");
+        q.previousClose = pc == null ? Double.NaN : pc.doubleValue();
+        Number vol = (Number) m.get("regularMarketVolume");
+        q.volume = vol == null ? 0L : vol.longValue();
+        Number avgVol = (Number) m.get("averageDailyVolume3Month");
+        q.averageVolume = avgVol == null ? 0L : avgVol.longValue();
+        Number open = (Number) m.get("open");
+        q.open = open == null ? Double.NaN : open.doubleValue();
+        Number dayLow = (Number) m.get("dayLow");
+        q.dayLow = dayLow == null ? Double.NaN : dayLow.doubleValue();
+        Number dayHigh = (Number) m.get("dayHigh");
+        q.dayHigh = dayHigh == null ? Double.NaN : dayHigh.doubleValue();
+        Number mc = (Number) m.get("marketCap");
+        q.marketCap = mc == null ? 0L : mc.longValue();
+        q.asOf = Instant.now();
+        return q;
+    }
+
+    private Fundamentals toFundamentals(Map<String, Object> m) {
+        Fundamentals f = new Fundamentals();
+        f.peRatio = (Double) m.get("peRatio");
+        f.pbRatio = (Double) m.get("pbRatio");
+        f.profitMargins = (Double) m.get("profitMargins");
+        f.debtToEquity = (Double) m.get("debtToEquity");
+        f.revenueGrowth = (Double) m.get("revenueGrowth");
+        f.freeCashflow = (Double) m.get("freeCashflow");
+        f.operatingMargins = (Double) m.get("operatingMargins");
+        f.returnOnEquity = (Double) m.get("returnOnEquity");
+        return f;
+    }
+
+    public BarSeries fetchChartBars(String symbol) {
         try {
-            List<Map<String, Object>> rows = yahoo.getChart(symbol, chartRange, chartInterval);
-            List<IntradayBar> bars = new ArrayList<IntradayBar>();
-            for (Map<String, Object> r : rows) {
-                IntradayBar b = new IntradayBar();
-                b.time = (Instant) r.get("time");
-                b.open = ((Number) r.get("open")).doubleValue();
-                b.high = ((Number) r.get("high")).doubleValue();
-                b.low = ((Number) r.get("low")).doubleValue();
-                b.close = ((Number) r.get("close")).doubleValue();
-                b.volume = ((Number) r.get("volume")).longValue();
-                bars.add(b);
-            }
-            return bars;
+            return barStore.getBars(symbol);
         } catch (IOException e) {
-            return Collections.emptyList();
+            failed("chart", symbol, e);
+            return new BarSeries(0);
         }
     }
 
+    public long getUpstreamRequestCount() {
+        return provider.getRequestCount();
+    }
+
+    public boolean followsMarketHours() {
+        return provider.followsMarketHours();
+    }
+
     public TechnicalSnapshot buildTechnicals(String symbol) {
-        List<IntradayBar> bars = fetchChartBars(symbol);
-        return indicators.computeTechnicalSnapshot(bars);
+        return buildTechnicals(symbol, fetchChartBars(symbol));
+    }
+
+    public TechnicalSnapshot buildTechnicals(String symbol, BarSeries bars) {
+        return indicators.computeTechnicalSnapshot(symbol, bars);
+    }
+
+    /**
+     * Technicals per configured timeframe ({@code monitor.timeframes}), from the intraday bars
+     * resampled locally rather than fetched again.
+     */
+    public Map<String, TechnicalSnapshot> buildTimeframeTechnicals(String symbol, BarSeries bars) {
+        Map<String, TechnicalSnapshot> result = new LinkedHashMap<String, TechnicalSnapshot>();
+        for (Map.Entry<String, BarSeries> e : resampler.resample(symbol, bars).entrySet()) {
+            result.put(e.getKey(), indicators.computeTechnicalSnapshot(symbol + "@" + e.getKey(), e.getValue()));
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
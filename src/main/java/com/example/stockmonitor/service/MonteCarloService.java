@@ -1,15 +1,24 @@
 package com.example.stockmonitor.service;
 
-import org.apache.commons.math3.distribution.NormalDistribution;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 @Service
 public class MonteCarloService {
 
-    private final Random random = new Random();
-    private final NormalDistribution nd = new NormalDistribution(0, 1);
+    // fixed chunking keeps results for a given seed independent of the number of cores
+    private static final int PATHS_PER_CHUNK = 8192;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long INSTRUMENT_STRIDE = 0xbf58476d1ce4e5b9L;
+    private static final double SESSION_MINUTES = 390.0;
+    public static final double DEFAULT_DAILY_VOLATILITY = 0.03;
+
+    @Value("${monitor.chart.interval:5m}")
+    private String chartInterval = "5m";
 
     public static class SimulationResult {
         public double probabilityOfProfit;
@@ -18,33 +27,151 @@ public class MonteCarloService {
     }
 
     public SimulationResult simulate(double price, double dailyVolatility, double horizonDays, double takeProfit, double stopLoss, int paths) {
-        SimulationResult r = new SimulationResult();
-        if (price <= 0 || dailyVolatility <= 0 || paths <= 0) return r;
-        int wins = 0;
-        double sumRet = 0.0;
-        double[] finals = new double[paths];
+        return simulate(price, dailyVolatility, horizonDays, takeProfit, stopLoss, paths, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Splits the paths into fixed-size chunks simulated in parallel, each with its own
+     * {@link SplittableRandom} derived from the seed and chunk index, so a seed always
+     * reproduces the same result. VaR is read with a selection pass instead of a full sort.
+     */
+    public SimulationResult simulate(double price, double dailyVolatility, double horizonDays, double takeProfit, double stopLoss,
+                                     int paths, long seed) {
+        return simulateBatch(new double[]{price}, new double[]{dailyVolatility}, horizonDays,
+                new double[]{takeProfit}, new double[]{stopLoss}, paths, seed)[0];
+    }
+
+    /**
+     * Simulates several instruments in one parallel pass: every (instrument, chunk) pair is an
+     * independent work unit, so small batches still spread across all cores. Instrument 0 uses
+     * the seed unchanged, matching {@link #simulate(double, double, double, double, double, int, long)}.
+     */
+    public SimulationResult[] simulateBatch(double[] prices, double[] dailyVolatilities, double horizonDays,
+                                            double[] takeProfits, double[] stopLosses, int paths, long seed) {
+        int n = prices.length;
+        SimulationResult[] results = new SimulationResult[n];
+        for (int i = 0; i < n; i++) results[i] = new SimulationResult();
+        if (paths <= 0 || n == 0) return results;
+        int chunks = (paths + PATHS_PER_CHUNK - 1) / PATHS_PER_CHUNK;
+        double[][] finals = new double[n][];
+        int[] wins = new int[n * chunks];
+        double[] sumRet = new double[n * chunks];
+        for (int i = 0; i < n; i++) {
+            if (valid(prices[i], dailyVolatilities[i])) finals[i] = new double[paths];
+        }
+        int days = (int) horizonDays;
+        IntStream.range(0, n * chunks).parallel().forEach(u -> {
+            int i = u / chunks;
+            int c = u % chunks;
+            if (finals[i] == null) return;
+            int from = c * PATHS_PER_CHUNK;
+            int to = Math.min(paths, from + PATHS_PER_CHUNK);
+            long instrumentSeed = seed + i * INSTRUMENT_STRIDE;
+            SplittableRandom random = new SplittableRandom(mix64(instrumentSeed + c * GOLDEN_GAMMA));
+            runPaths(random, prices[i], dailyVolatilities[i], days, takeProfits[i], stopLosses[i],
+                    finals[i], from, to, wins, sumRet, u);
+        });
+        for (int i = 0; i < n; i++) {
+            if (finals[i] == null) continue;
+            int totalWins = 0;
+            double totalRet = 0.0;
+            for (int c = 0; c < chunks; c++) {
+                totalWins += wins[i * chunks + c];
+                totalRet += sumRet[i * chunks + c];
+            }
+            SimulationResult r = results[i];
+            r.probabilityOfProfit = (double) totalWins / paths;
+            r.expectedReturn = totalRet / paths;
+            r.var95 = select(finals[i], (int) Math.floor(paths * 0.05));
+        }
+        return results;
+    }
+
+    /**
+     * Converts an intraday ATR into a daily volatility fraction: ATR / price per bar, scaled by
+     * the square root of the bars in a regular session. Falls back to 3% when ATR is unusable.
+     */
+    public double dailyVolatilityFromAtr(double atr, double price) {
+        if (Double.isNaN(atr) || atr <= 0 || Double.isNaN(price) || price <= 0) return DEFAULT_DAILY_VOLATILITY;
+        return atr / price * Math.sqrt(barsPerSession(chartInterval));
+    }
+
+    static double barsPerSession(String interval) {
+        try {
+            if (interval.endsWith("m")) return Math.max(1.0, SESSION_MINUTES / Double.parseDouble(interval.substring(0, interval.length() - 1)));
+            if (interval.endsWith("h")) return Math.max(1.0, SESSION_MINUTES / (60.0 * Double.parseDouble(interval.substring(0, interval.length() - 1))));
+        } catch (NumberFormatException ignored) {
+        }
+        return 1.0;
+    }
+
+    private static boolean valid(double price, double dailyVolatility) {
+        return price > 0 && dailyVolatility > 0;
+    }
+
+    private static void runPaths(SplittableRandom random, double price, double dailyVolatility, int days,
+                                 double takeProfit, double stopLoss, double[] finals, int from, int to,
+                                 int[] wins, double[] sumRet, int slot) {
         double dt = 1.0;
-        for (int p = 0; p < paths; p++) {
+        double step = dailyVolatility * Math.sqrt(dt);
+        int w = 0;
+        double sum = 0.0;
+        for (int p = from; p < to; p++) {
             double s = price;
             boolean hit = false;
-            for (int d = 0; d < (int)horizonDays; d++) {
-                double z = nd.sample();
-                double change = s * dailyVolatility * Math.sqrt(dt) * z; // drift ~0 for simplicity
-                s += change;
-                if (s >= takeProfit) { wins++; hit = true; break; }
+            for (int d = 0; d < days; d++) {
+                s += s * step * ZigguratNormal.next(random); // drift ~0 for simplicity
+                if (s >= takeProfit) { w++; hit = true; break; }
                 if (s <= stopLoss) { hit = true; break; }
             }
-            if (!hit) {
-                if (s > price) wins++;
+            if (!hit && s > price) w++;
+            double ret = (s - price) / price;
+            sum += ret;
+            finals[p] = ret;
+        }
+        wins[slot] = w;
+        sumRet[slot] = sum;
+    }
+
+    /**
+     * Returns the k-th smallest value (0-based), partially reordering the array in place.
+     */
+    static double select(double[] a, int k) {
+        int lo = 0;
+        int hi = a.length - 1;
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < a[lo]) swap(a, mid, lo);
+            if (a[hi] < a[lo]) swap(a, hi, lo);
+            if (a[hi] < a[mid]) swap(a, hi, mid);
+            double pivot = a[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    swap(a, i, j);
+                    i++;
+                    j--;
+                }
             }
-            sumRet += (s - price) / price;
-            finals[p] = (s - price) / price;
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return a[k];
         }
-        r.probabilityOfProfit = (double) wins / paths;
-        r.expectedReturn = sumRet / paths;
-        java.util.Arrays.sort(finals);
-        int idx = (int)Math.floor(paths * 0.05);
-        r.var95 = finals[idx];
-        return r;
-    }
-}
\ No newline at end of file
+        return a[k];
+    }
+
+    private static void swap(double[] a, int i, int j) {
+        double t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
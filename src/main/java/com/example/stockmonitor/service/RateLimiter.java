@@ -0,0 +1,43 @@
+package com.example.stockmonitor.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket: up to {@code burst} permits are handed out at once, refilled at the configured
+ * rate. Callers beyond the stored tokens reserve future ones and sleep until they are due.
+ */
+class RateLimiter {
+
+    private double permitsPerNano;
+    private final double burst;
+    private double stored;
+    private long lastRefill;
+
+    RateLimiter(double permitsPerSecond, double burst) {
+        this.permitsPerNano = permitsPerSecond > 0 ? permitsPerSecond / TimeUnit.SECONDS.toNanos(1) : 0.0;
+        this.burst = Math.max(1.0, burst);
+        this.stored = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    synchronized void setRate(double permitsPerSecond) {
+        long now = System.nanoTime();
+        stored = Math.min(burst, stored + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+        permitsPerNano = permitsPerSecond > 0 ? permitsPerSecond / TimeUnit.SECONDS.toNanos(1) : 0.0;
+    }
+
+    void acquire() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            if (permitsPerNano == 0) return;
+            long now = System.nanoTime();
+            stored = Math.min(burst, stored + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+            // a negative balance is a reservation of tokens not yet refilled
+            wait = stored >= 1.0 ? 0L : (long) ((1.0 - stored) / permitsPerNano);
+            stored -= 1.0;
+        }
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.config.CacheConfig;
+import com.example.stockmonitor.model.BarSeries;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves recorded Yahoo responses instead of calling upstream, for offline runs and load tests of
+ * the scan pipeline. Enabled with {@code monitor.provider=replay}.
+ * <p>
+ * Recordings are read from {@code monitor.replay.dir}, falling back to the ones bundled under
+ * {@code classpath:replay/}: {@code screener-day-losers.json}, and {@code quote-summary.json} and
+ * {@code chart-5m-1mo.json} as templates for symbols without their own
+ * {@code quote-summary/SYM.json} or {@code chart/SYM.json}. Each call parses the recorded bytes
+ * again, so parsing stays part of the measured work. Both module getters return every recorded
+ * field.
+ * <p>
+ * With {@code monitor.replay.universe} above zero the screener returns that many synthetic symbols
+ * (SYN0000, SYN0001, ...) instead of the recording. Templates are rescaled per symbol from a hash of
+ * its name: price level, size, sector, valuation and drop, and chart bars follow the template's
+ * returns from a per-symbol offset, ending at the quoted price.
+ * <p>
+ * A replay clock runs {@code monitor.replay.speed} times faster than wall time. Chart times are
+ * shifted so the last bar falls on it and drops drift with every bar it passes, so successive
+ * cycles see new bars and changed analyses. {@code monitor.replay.latency.millis} adds a jittered
+ * delay per request, and {@code monitor.replay.throttled} sends calls through
+ * {@link TrafficController} like live ones.
+ */
+@Component
+@ConditionalOnProperty(name = "monitor.provider", havingValue = "replay")
+public class ReplayMarketDataProvider implements MarketDataProvider {
+
+    static final String SCREENER_FILE = "screener-day-losers.json";
+    static final String QUOTE_SUMMARY_FILE = "quote-summary.json";
+    static final String CHART_FILE = "chart-5m-1mo.json";
+
+    private static final long BAR_SECONDS = 300L;
+    private static final byte[] NO_RECORDING = new byte[0];
+    private static final String[] SECTORS = {"Technology", "Healthcare", "Financial Services", "Energy", "Industrials",
+            "Consumer Cyclical", "Consumer Defensive", "Utilities", "Real Estate", "Basic Materials",
+            "Communication Services"};
+
+    // hash salts for the per-symbol traits; drift uses the bar index instead
+    private static final long DROP = -1L;
+    private static final long PRICE = -2L;
+    private static final long SIZE = -3L;
+    private static final long SECTOR = -4L;
+    private static final long VALUATION = -5L;
+    private static final long PATH = -6L;
+    private static final long MARGINS = -7L;
+    private static final long LEVERAGE = -8L;
+    private static final long RETURNS = -9L;
+    private static final long GROWTH = -10L;
+
+    private final Path dir;
+    private final YahooResponseParser parser = new YahooResponseParser(new ObjectMapper());
+    private final List<String> universe;
+    private final double speed;
+    private final long latencyMillis;
+    private final boolean throttled;
+    private final TrafficController traffic;
+    private final MeterRegistry meterRegistry;
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final Map<String, byte[]> recordings = new ConcurrentHashMap<String, byte[]>();
+    // drops from the recorded screener, so quotes agree with it
+    private final Map<String, Double> recordedDrops = new ConcurrentHashMap<String, Double>();
+
+    public ReplayMarketDataProvider(@Value("${monitor.replay.dir:}") String dir,
+                                    @Value("${monitor.replay.universe:0}") int universeSize,
+                                    @Value("${monitor.replay.speed:1}") double speed,
+                                    @Value("${monitor.replay.latency.millis:50}") long latencyMillis,
+                                    @Value("${monitor.replay.throttled:false}") boolean throttled,
+                                    TrafficController traffic, MeterRegistry meterRegistry) {
+        this.dir = dir == null || dir.trim().isEmpty() ? null : Paths.get(dir.trim());
+        this.speed = speed > 0 ? speed : 1.0;
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.throttled = throttled;
+        this.traffic = traffic;
+        this.meterRegistry = meterRegistry;
+        int width = Math.max(4, String.valueOf(Math.max(0, universeSize - 1)).length());
+        List<String> symbols = new ArrayList<String>(Math.max(0, universeSize));
+        for (int i = 0; i < universeSize; i++) symbols.add(String.format("SYN%0" + width + "d", i));
+        this.universe = Collections.unmodifiableList(symbols);
+    }
+
+    @Override
+    public List<Map<String, Object>> getTopLosers(int count) throws IOException {
+        return call(YahooFinanceClient.SCREENER, () -> {
+            if (!universe.isEmpty()) return syntheticLosers(count);
+            List<Map<String, Object>> items = parser.parseTopLosers(new ByteArrayInputStream(recording(SCREENER_FILE)));
+            if (items.size() > count) items = new ArrayList<Map<String, Object>>(items.subList(0, count));
+            for (Map<String, Object> m : items) {
+                Object cp = m.get("regularMarketChangePercent");
+                if (m.get("symbol") != null && cp instanceof Number) {
+                    recordedDrops.put((String) m.get("symbol"), ((Number) cp).doubleValue());
+                }
+            }
+            return items;
+        });
+    }
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.QUOTES, sync = true)
+    public Map<String, Object> getQuoteModules(String symbol) throws IOException {
+        return quoteSummary(symbol);
+    }
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.PROFILES, sync = true)
+    public Map<String, Object> getProfileModules(String symbol) throws IOException {
+        return quoteSummary(symbol);
+    }
+
+    @Override
+    public BarSeries getChart(String symbol, String range, String interval) throws IOException {
+        Duration d = BarStore.rangeDuration(range);
+        return chart(symbol, d == null ? Long.MIN_VALUE : replayNow() - d.getSeconds());
+    }
+
+    /**
+     * The replay clock decides the newest bar, so {@code period2} is not applied.
+     */
+    @Override
+    @Cacheable(cacheNames = CacheConfig.CHARTS, key = "{#symbol, #period1, #interval}", sync = true)
+    public BarSeries getChart(String symbol, long period1, long period2, String interval) throws IOException {
+        return chart(symbol, period1);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public boolean followsMarketHours() {
+        return false;
+    }
+
+    private Map<String, Object> quoteSummary(String symbol) throws IOException {
+        return call(YahooFinanceClient.QUOTE_SUMMARY, () -> {
+            byte[] own = recording(perSymbol("quote-summary/", symbol));
+            boolean recorded = own.length > 0;
+            Map<String, Object> m = parser.parseQuoteSummary(new ByteArrayInputStream(recorded ? own : template(QUOTE_SUMMARY_FILE)));
+            if (!recorded) synthesizeQuote(symbol, m);
+            return Collections.unmodifiableMap(m);
+        });
+    }
+
+    private BarSeries chart(String symbol, long since) throws IOException {
+        return call(YahooFinanceClient.CHART, () -> {
+            byte[] own = recording(perSymbol("chart/", symbol));
+            boolean recorded = own.length > 0;
+            BarSeries bars = parser.parseChart(new ByteArrayInputStream(recorded ? own : template(CHART_FILE)));
+            if (bars.isEmpty()) return bars;
+            if (!recorded) bars = synthesizeChart(symbol, bars);
+            long now = Math.floorDiv(replayNow(), BAR_SECONDS) * BAR_SECONDS;
+            long shift = now - bars.lastTime();
+            int first = bars.indexAtOrAfter(since == Long.MIN_VALUE ? since : since - shift);
+            BarSeries out = new BarSeries(bars.size() - first);
+            for (int i = first; i < bars.size(); i++) {
+                out.add(bars.time(i) + shift, bars.open(i), bars.high(i), bars.low(i), bars.close(i), bars.volume(i));
+            }
+            return out;
+        });
+    }
+
+    private List<Map<String, Object>> syntheticLosers(int count) {
+        long step = step();
+        List<Map<String, Object>> all = new ArrayList<Map<String, Object>>(universe.size());
+        for (String symbol : universe) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("symbol", symbol);
+            m.put("shortName", symbol);
+            m.put("regularMarketChangePercent", dropPercent(symbol, step));
+            all.add(m);
+        }
+        Collections.sort(all, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Double.compare((Double) a.get("regularMarketChangePercent"), (Double) b.get("regularMarketChangePercent"));
+            }
+        });
+        return all.size() > count ? new ArrayList<Map<String, Object>>(all.subList(0, Math.max(0, count))) : all;
+    }
+
+    private void synthesizeQuote(String symbol, Map<String, Object> m) {
+        double previousClose = previousClose(symbol);
+        double scale = previousClose / value(m, "previousClose", previousClose);
+        double size = 0.02 + unit(hash(symbol, SIZE));
+        double valuation = 0.3 + 1.7 * unit(hash(symbol, VALUATION));
+        double drop = dropPercent(symbol, step());
+        double price = previousClose * (1 + drop / 100.0);
+        String sector = SECTORS[(int) (unit(hash(symbol, SECTOR)) * SECTORS.length)];
+
+        m.put("shortName", symbol);
+        m.put("longName", symbol);
+        m.put("sector", sector);
+        m.put("industry", sector);
+        m.put("previousClose", previousClose);
+        m.put("open", previousClose);
+        m.put("regularMarketPrice", price);
+        m.put("regularMarketChangePercent", drop);
+        m.put("dayLow", Math.min(price, previousClose));
+        m.put("dayHigh", Math.max(price, previousClose));
+        m.put("regularMarketVolume", value(m, "regularMarketVolume", 1e6) * size * (1 + Math.abs(drop) / 10.0));
+        m.put("averageDailyVolume3Month", value(m, "averageDailyVolume3Month", 1e6) * size);
+        m.put("marketCap", value(m, "marketCap", 1e10) * scale * size);
+        if (m.get("peRatio") != null) m.put("peRatio", value(m, "peRatio", 0) * valuation);
+        if (m.get("pbRatio") != null) m.put("pbRatio", value(m, "pbRatio", 0) * valuation);
+        // spread so that some symbols fail each fundamentals filter
+        m.put("profitMargins", trait(symbol, MARGINS, -0.05, 0.35));
+        m.put("operatingMargins", trait(symbol, MARGINS, 0.0, 0.45));
+        m.put("debtToEquity", trait(symbol, LEVERAGE, 0.0, 2.5));
+        m.put("returnOnEquity", trait(symbol, RETURNS, -0.05, 0.4));
+        m.put("revenueGrowth", trait(symbol, GROWTH, -0.1, 0.3));
+    }
+
+    /**
+     * Walks the template's bar-to-bar returns from a per-symbol offset, keeping each bar's
+     * open/high/low shape relative to its close, and scales the path to end at the quoted price.
+     */
+    private BarSeries synthesizeChart(String symbol, BarSeries template) {
+        int n = template.size();
+        if (n < 2) return template;
+        double[] opens = template.opens();
+        double[] highs = template.highs();
+        double[] lows = template.lows();
+        double[] closes = template.closes();
+        long[] volumes = template.volumes();
+        int offset = (int) (unit(hash(symbol, PATH)) * (n - 1));
+        double size = 0.02 + unit(hash(symbol, SIZE));
+
+        int[] source = new int[n];
+        double[] path = new double[n];
+        source[0] = offset;
+        path[0] = 1.0;
+        for (int i = 1; i < n; i++) {
+            int j = 1 + (offset + i - 1) % (n - 1);
+            source[i] = j;
+            path[i] = path[i - 1] * (closes[j] / closes[j - 1]);
+        }
+        double target = previousClose(symbol) * (1 + dropPercent(symbol, step()) / 100.0);
+        double factor = target / path[n - 1];
+
+        BarSeries out = new BarSeries(n);
+        for (int i = 0; i < n; i++) {
+            int j = source[i];
+            double close = path[i] * factor;
+            double ratio = close / closes[j];
+            out.add(template.time(i), opens[j] * ratio, highs[j] * ratio, lows[j] * ratio, close,
+                    (long) (volumes[j] * size));
+        }
+        return out;
+    }
+
+    private static double previousClose(String symbol) {
+        return trait(symbol, PRICE, 5.0, 405.0);
+    }
+
+    private static double trait(String symbol, long salt, double min, double max) {
+        return min + (max - min) * unit(hash(symbol, salt));
+    }
+
+    /**
+     * Drop in percent: a per-symbol level (or the recorded one) plus up to half a point of drift
+     * that changes with every bar of the replay clock.
+     */
+    private double dropPercent(String symbol, long step) {
+        Double recorded = recordedDrops.get(symbol);
+        double level = recorded != null ? recorded : -(0.5 + 24.5 * unit(hash(symbol, DROP)));
+        return level + unit(hash(symbol, step)) - 0.5;
+    }
+
+    private long replayNow() {
+        long now = System.currentTimeMillis();
+        return (startMillis + (long) ((now - startMillis) * speed)) / 1000L;
+    }
+
+    private long step() {
+        return Math.floorDiv(replayNow(), BAR_SECONDS);
+    }
+
+    private <T> T call(String endpoint, TrafficController.Exchange<T> exchange) throws IOException {
+        TrafficController.Exchange<T> timed = () -> {
+            long start = System.nanoTime();
+            requestCount.incrementAndGet();
+            String status = "IO_ERROR";
+            try {
+                delay();
+                T result = exchange.run();
+                status = "200";
+                return result;
+            } finally {
+                Timer.builder("monitor.upstream.request")
+                        .tag("endpoint", endpoint)
+                        .tag("status", status)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+        return throttled ? traffic.call(endpoint, timed) : timed.run();
+    }
+
+    private void delay() throws InterruptedIOException {
+        if (latencyMillis == 0) return;
+        try {
+            TimeUnit.MILLISECONDS.sleep((long) (latencyMillis * (0.5 + ThreadLocalRandom.current().nextDouble())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted replaying a response");
+        }
+    }
+
+    private static String perSymbol(String folder, String symbol) {
+        // never resolve a symbol outside the recordings directory
+        if (symbol == null || symbol.isEmpty() || symbol.indexOf('/') >= 0 || symbol.indexOf('\\') >= 0
+                || symbol.startsWith(".")) return null;
+        return folder + symbol + ".json";
+    }
+
+    private byte[] template(String name) throws IOException {
+        byte[] bytes = recording(name);
+        if (bytes.length == 0) throw new FileNotFoundException("No recorded " + name);
+        return bytes;
+    }
+
+    private byte[] recording(String name) throws IOException {
+        if (name == null) return NO_RECORDING;
+        byte[] bytes = recordings.get(name);
+        if (bytes == null) {
+            bytes = read(name);
+            recordings.put(name, bytes);
+        }
+        return bytes;
+    }
+
+    private byte[] read(String name) throws IOException {
+        if (dir != null) {
+            Path file = dir.resolve(name);
+            if (Files.isRegularFile(file)) return Files.readAllBytes(file);
+        }
+        try (InputStream in = ReplayMarketDataProvider.class.getResourceAsStream("/replay/" + name)) {
+            if (in == null) return NO_RECORDING;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static double value(Map<String, Object> m, String key, double fallback) {
+        Object v = m.get(key);
+        return v instanceof Number ? ((Number) v).doubleValue() : fallback;
+    }
+
+    // splitmix64 finalizer over the symbol hash and a salt
+    private static long hash(String symbol, long salt) {
+        long z = symbol.hashCode() * 0x9E3779B97F4A7C15L + salt * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
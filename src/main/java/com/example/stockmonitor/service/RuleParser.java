@@ -0,0 +1,254 @@
+package com.example.stockmonitor.service;
+
+/**
+ * Recursive-descent parser for one screening rule, emitting into a shared
+ * {@link RuleProgram.Builder}. Grammar, loosest binding first:
+ * <pre>
+ * rule    := or
+ * or      := and (("or" | "||") and)*
+ * and     := not (("and" | "&amp;&amp;") not)*
+ * not     := ("not" | "!") not | compare
+ * compare := sum (("&lt;" | "&lt;=" | "&gt;" | "&gt;=" | "==" | "!=") sum)?
+ *          | textField ("==" | "!=") "string"
+ * sum     := term (("+" | "-") term)*
+ * term    := unary (("*" | "/") unary)*
+ * unary   := "-" unary | number | field | "(" or ")"
+ * </pre>
+ * Numbers may use underscores and exponents ({@code 2_000_000_000}, {@code 2e9}); strings are in
+ * double or single quotes. A rule must be a condition, not a bare number.
+ */
+final class RuleParser {
+
+    private final String src;
+    private final RuleProgram.Builder out;
+    private int pos;
+
+    RuleParser(String src, RuleProgram.Builder out) {
+        this.src = src;
+        this.out = out;
+    }
+
+    int parseRule() {
+        int slot = parseOr();
+        skipSpace();
+        if (pos < src.length()) throw error("unexpected '" + src.charAt(pos) + "'");
+        requireBoolean(slot, "a rule must be a condition");
+        return slot;
+    }
+
+    private int parseOr() {
+        int left = parseAnd();
+        while (acceptWord("or") || accept("||")) {
+            int at = pos;
+            int right = parseAnd();
+            requireBoolean(left, "'or' needs conditions");
+            requireBoolean(right, at, "'or' needs conditions");
+            left = out.binary(RuleProgram.OR, left, right);
+        }
+        return left;
+    }
+
+    private int parseAnd() {
+        int left = parseNot();
+        while (acceptWord("and") || accept("&&")) {
+            int at = pos;
+            int right = parseNot();
+            requireBoolean(left, "'and' needs conditions");
+            requireBoolean(right, at, "'and' needs conditions");
+            left = out.binary(RuleProgram.AND, left, right);
+        }
+        return left;
+    }
+
+    private int parseNot() {
+        if (acceptWord("not") || (peek('!') && !peekAt(1, '=') && accept("!"))) {
+            int at = pos;
+            int operand = parseNot();
+            requireBoolean(operand, at, "'not' needs a condition");
+            return out.unary(RuleProgram.NOT, operand);
+        }
+        return parseCompare();
+    }
+
+    private int parseCompare() {
+        skipSpace();
+        int start = pos;
+        String word = peekPath();
+        if (word != null && out.isTextField(word)) {
+            pos = start + word.length();
+            boolean equal;
+            if (accept("==")) equal = true;
+            else if (accept("!=")) equal = false;
+            else throw error("'" + word + "' can only be compared with == or !=");
+            int slot = out.textEquals(word, parseString());
+            return equal ? slot : out.unary(RuleProgram.NOT, slot);
+        }
+        int left = parseSum();
+        byte op;
+        if (accept("<=")) op = RuleProgram.LE;
+        else if (accept(">=")) op = RuleProgram.GE;
+        else if (accept("==")) op = RuleProgram.EQ;
+        else if (accept("!=")) op = RuleProgram.NE;
+        else if (accept("<")) op = RuleProgram.LT;
+        else if (accept(">")) op = RuleProgram.GT;
+        else return left;
+        int at = pos;
+        int right = parseSum();
+        requireNumber(left, start, "comparisons need numbers");
+        requireNumber(right, at, "comparisons need numbers");
+        return out.binary(op, left, right);
+    }
+
+    private int parseSum() {
+        int left = parseTerm();
+        while (true) {
+            byte op;
+            if (accept("+")) op = RuleProgram.ADD;
+            else if (accept("-")) op = RuleProgram.SUB;
+            else return left;
+            left = arithmetic(op, left, parseTerm());
+        }
+    }
+
+    private int parseTerm() {
+        int left = parseUnary();
+        while (true) {
+            byte op;
+            if (accept("*")) op = RuleProgram.MUL;
+            else if (accept("/")) op = RuleProgram.DIV;
+            else return left;
+            left = arithmetic(op, left, parseUnary());
+        }
+    }
+
+    private int parseUnary() {
+        skipSpace();
+        int start = pos;
+        if (accept("-")) {
+            int operand = parseUnary();
+            requireNumber(operand, start, "'-' needs a number");
+            return out.unary(RuleProgram.NEG, operand);
+        }
+        if (accept("(")) {
+            int inner = parseOr();
+            if (!accept(")")) throw error("expected ')'");
+            return inner;
+        }
+        if (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) {
+            return out.constant(parseNumber());
+        }
+        String path = peekPath();
+        if (path == null) throw error(pos < src.length() ? "unexpected '" + src.charAt(pos) + "'" : "unexpected end of rule");
+        int slot = out.field(path);
+        if (slot < 0) throw error(out.isTextField(path) ? "'" + path + "' is text" : "unknown field '" + path + "'");
+        pos += path.length();
+        return slot;
+    }
+
+    private int arithmetic(byte op, int left, int right) {
+        requireNumber(left, pos, "arithmetic needs numbers");
+        requireNumber(right, pos, "arithmetic needs numbers");
+        return out.binary(op, left, right);
+    }
+
+    private double parseNumber() {
+        int start = pos;
+        while (pos < src.length()) {
+            char c = src.charAt(pos);
+            boolean exponentSign = (c == '+' || c == '-') && pos > start
+                    && (src.charAt(pos - 1) == 'e' || src.charAt(pos - 1) == 'E');
+            if (Character.isDigit(c) || c == '.' || c == '_' || c == 'e' || c == 'E' || exponentSign) pos++;
+            else break;
+        }
+        try {
+            return Double.parseDouble(src.substring(start, pos).replace("_", ""));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("bad number '" + src.substring(start, Math.min(src.length(), start + 20)).trim() + "'");
+        }
+    }
+
+    private String parseString() {
+        skipSpace();
+        if (pos >= src.length() || (src.charAt(pos) != '"' && src.charAt(pos) != '\'')) throw error("expected a quoted string");
+        char quote = src.charAt(pos);
+        int end = src.indexOf(quote, pos + 1);
+        if (end < 0) throw error("unterminated string");
+        String value = src.substring(pos + 1, end);
+        pos = end + 1;
+        return value;
+    }
+
+    /**
+     * The field name starting here (letters, digits, dots and one [timeframe]), without consuming it.
+     */
+    private String peekPath() {
+        skipSpace();
+        int i = pos;
+        if (i >= src.length() || !Character.isLetter(src.charAt(i))) return null;
+        while (i < src.length()) {
+            char c = src.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '_') {
+                i++;
+            } else if (c == '[') {
+                int close = src.indexOf(']', i);
+                if (close < 0) return null;
+                i = close + 1;
+            } else {
+                break;
+            }
+        }
+        String word = src.substring(pos, i);
+        if (word.equals("and") || word.equals("or") || word.equals("not")) return null;
+        return word;
+    }
+
+    private boolean acceptWord(String word) {
+        skipSpace();
+        int end = pos + word.length();
+        if (!src.startsWith(word, pos)) return false;
+        if (end < src.length() && (Character.isLetterOrDigit(src.charAt(end)) || src.charAt(end) == '.')) return false;
+        pos = end;
+        return true;
+    }
+
+    private boolean accept(String token) {
+        skipSpace();
+        if (!src.startsWith(token, pos)) return false;
+        pos += token.length();
+        return true;
+    }
+
+    private boolean peek(char c) {
+        skipSpace();
+        return pos < src.length() && src.charAt(pos) == c;
+    }
+
+    private boolean peekAt(int offset, char c) {
+        return pos + offset < src.length() && src.charAt(pos + offset) == c;
+    }
+
+    private void skipSpace() {
+        while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+    }
+
+    private void requireBoolean(int slot, String message) {
+        requireBoolean(slot, pos, message);
+    }
+
+    private void requireBoolean(int slot, int at, String message) {
+        if (!out.isBoolean(slot)) throw error(at, message);
+    }
+
+    private void requireNumber(int slot, int at, String message) {
+        if (out.isBoolean(slot)) throw error(at, message);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return error(pos, message);
+    }
+
+    private IllegalArgumentException error(int at, String message) {
+        return new IllegalArgumentException(message + " at column " + (at + 1));
+    }
+}
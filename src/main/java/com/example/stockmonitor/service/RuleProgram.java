@@ -0,0 +1,402 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.Fundamentals;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.example.stockmonitor.model.StockModels.Quote;
+import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+
+import java.util.*;
+
+/**
+ * A set of screening rules compiled together into one flat instruction list. Every distinct
+ * subexpression, across all rules, is one instruction: the compiler interns nodes by operator and
+ * operands (operands of commutative operators sorted), so a term shared by many rules is read or
+ * computed once per batch. Instructions live in flat arrays, operands before the nodes using
+ * them, and are run column by column over a batch of analyses by an {@link Evaluator}.
+ * <p>
+ * Values are doubles; booleans are 1 and 0. A missing field reads as NaN, which makes every
+ * comparison on it false. See {@link RuleParser} for the syntax and {@link #numberFields()} for
+ * the fields.
+ */
+public final class RuleProgram {
+
+    interface NumberField {
+        double read(AnalysisResult ar, GreedIndex gi);
+    }
+
+    interface TextField {
+        String read(AnalysisResult ar);
+    }
+
+    static final byte CONST = 0, FIELD = 1, TEXT_EQ = 2, NEG = 3, ADD = 4, SUB = 5, MUL = 6, DIV = 7,
+            LT = 8, LE = 9, GT = 10, GE = 11, EQ = 12, NE = 13, AND = 14, OR = 15, NOT = 16;
+
+    private static final Map<String, NumberField> NUMBER_FIELDS = new LinkedHashMap<String, NumberField>();
+    private static final Map<String, TextField> TEXT_FIELDS = new LinkedHashMap<String, TextField>();
+    private static final String[] TECHNICALS = {"rsi14", "ema20", "ema50", "atr14", "obv", "volumeZScore"};
+
+    static {
+        NUMBER_FIELDS.put("quote.price", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.price);
+        NUMBER_FIELDS.put("quote.changePercent", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.changePercent);
+        NUMBER_FIELDS.put("quote.previousClose", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.previousClose);
+        NUMBER_FIELDS.put("quote.open", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.open);
+        NUMBER_FIELDS.put("quote.dayLow", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.dayLow);
+        NUMBER_FIELDS.put("quote.dayHigh", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.dayHigh);
+        NUMBER_FIELDS.put("quote.volume", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.volume);
+        NUMBER_FIELDS.put("quote.averageVolume", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.averageVolume);
+        NUMBER_FIELDS.put("quote.marketCap", (ar, gi) -> ar.quote == null ? Double.NaN : ar.quote.marketCap);
+        for (String name : TECHNICALS) {
+            NUMBER_FIELDS.put("technicals." + name, technicalField(null, name));
+        }
+        NUMBER_FIELDS.put("fundamentals.peRatio", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.peRatio));
+        NUMBER_FIELDS.put("fundamentals.pbRatio", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.pbRatio));
+        NUMBER_FIELDS.put("fundamentals.profitMargins", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.profitMargins));
+        NUMBER_FIELDS.put("fundamentals.operatingMargins", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.operatingMargins));
+        NUMBER_FIELDS.put("fundamentals.debtToEquity", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.debtToEquity));
+        NUMBER_FIELDS.put("fundamentals.revenueGrowth", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.revenueGrowth));
+        NUMBER_FIELDS.put("fundamentals.freeCashflow", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.freeCashflow));
+        NUMBER_FIELDS.put("fundamentals.returnOnEquity", (ar, gi) -> ar.fundamentals == null ? Double.NaN : orNaN(ar.fundamentals.returnOnEquity));
+        NUMBER_FIELDS.put("greed.value", (ar, gi) -> gi == null ? Double.NaN : gi.value);
+        NUMBER_FIELDS.put("qualityScore", (ar, gi) -> ar.qualityScore);
+        NUMBER_FIELDS.put("valuationScore", (ar, gi) -> ar.valuationScore);
+        NUMBER_FIELDS.put("momentumScore", (ar, gi) -> ar.momentumScore);
+
+        TEXT_FIELDS.put("symbol", ar -> ar.symbol);
+        TEXT_FIELDS.put("sector", ar -> ar.sector);
+        TEXT_FIELDS.put("industry", ar -> ar.industry);
+        TEXT_FIELDS.put("signal", ar -> ar.signal);
+    }
+
+    private final String[] names;
+    private final String[] sources;
+    private final int[] ruleSlots;
+    private final byte[] ops;
+    private final int[] left;
+    private final int[] right;
+    private final double[] constants;
+    private final NumberField[] numberFields;
+    private final TextField[] textFields;
+    private final String[] texts;
+
+    private RuleProgram(Builder b, String[] names, String[] sources, int[] ruleSlots) {
+        int n = b.ops.size();
+        this.names = names;
+        this.sources = sources;
+        this.ruleSlots = ruleSlots;
+        this.ops = new byte[n];
+        this.left = new int[n];
+        this.right = new int[n];
+        this.constants = new double[n];
+        this.numberFields = new NumberField[n];
+        this.textFields = new TextField[n];
+        this.texts = new String[n];
+        for (int i = 0; i < n; i++) {
+            ops[i] = b.ops.get(i);
+            left[i] = b.left.get(i);
+            right[i] = b.right.get(i);
+            constants[i] = b.constants.get(i);
+            numberFields[i] = b.numberFields.get(i);
+            textFields[i] = b.textFields.get(i);
+            texts[i] = b.texts.get(i);
+        }
+    }
+
+    /**
+     * Compiles rules given as name to expression, in order.
+     *
+     * @throws IllegalArgumentException naming the rule and column of the first syntax or type error
+     */
+    public static RuleProgram compile(Map<String, String> rules) {
+        Builder b = new Builder();
+        String[] names = new String[rules.size()];
+        String[] sources = new String[rules.size()];
+        int[] slots = new int[rules.size()];
+        int i = 0;
+        for (Map.Entry<String, String> e : rules.entrySet()) {
+            try {
+                slots[i] = new RuleParser(e.getValue(), b).parseRule();
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Rule '" + e.getKey() + "': " + ex.getMessage(), ex);
+            }
+            names[i] = e.getKey();
+            sources[i] = e.getValue();
+            i++;
+        }
+        return new RuleProgram(b, names, sources, slots);
+    }
+
+    /**
+     * Names accepted as numeric fields; {@code technicals[15m].rsi14} style names, for the
+     * timeframes of {@code AnalysisResult.timeframes}, are accepted as well.
+     */
+    public static Set<String> numberFields() {
+        return Collections.unmodifiableSet(NUMBER_FIELDS.keySet());
+    }
+
+    public static Set<String> textFields() {
+        return Collections.unmodifiableSet(TEXT_FIELDS.keySet());
+    }
+
+    public int ruleCount() {
+        return names.length;
+    }
+
+    public String name(int rule) {
+        return names[rule];
+    }
+
+    public String source(int rule) {
+        return sources[rule];
+    }
+
+    /**
+     * Distinct subexpressions across all rules.
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * Evaluation buffers for one thread; reuse it for every batch.
+     */
+    public Evaluator newEvaluator() {
+        return new Evaluator();
+    }
+
+    /**
+     * Evaluates every rule over a batch of analyses at once, one instruction at a time: numeric
+     * terms fill a column with one value per analysis, and conditions fill a bitset with one bit per
+     * analysis, so {@code and}, {@code or} and {@code not} combine 64 analyses per operation. Each
+     * distinct subexpression is therefore computed once per batch, however many rules use it.
+     * Buffers are kept between batches and only grow.
+     */
+    public final class Evaluator {
+        private final double[][] numbers = new double[ops.length][];
+        private final long[][] bits = new long[ops.length][];
+        private int capacity = -1;
+        private int count;
+
+        private Evaluator() {
+        }
+
+        public void evaluate(List<AnalysisResult> items, GreedIndex gi) {
+            count = items.size();
+            if (count > capacity) allocate(Math.max(count, capacity + (capacity >> 1)));
+            int words = (count + 63) >>> 6;
+            for (int i = 0; i < ops.length; i++) {
+                double[] out = numbers[i];
+                long[] set = bits[i];
+                switch (ops[i]) {
+                    case CONST:
+                        break; // filled when allocated
+                    case FIELD: {
+                        NumberField f = numberFields[i];
+                        for (int j = 0; j < count; j++) out[j] = f.read(items.get(j), gi);
+                        break;
+                    }
+                    case TEXT_EQ: {
+                        Arrays.fill(set, 0, words, 0L);
+                        TextField f = textFields[i];
+                        for (int j = 0; j < count; j++) {
+                            if (texts[i].equals(f.read(items.get(j)))) set[j >>> 6] |= 1L << j;
+                        }
+                        break;
+                    }
+                    case NEG: {
+                        double[] a = numbers[left[i]];
+                        for (int j = 0; j < count; j++) out[j] = -a[j];
+                        break;
+                    }
+                    case ADD: case SUB: case MUL: case DIV:
+                        arithmetic(ops[i], numbers[left[i]], numbers[right[i]], out);
+                        break;
+                    case LT: case LE: case GT: case GE: case EQ: case NE:
+                        compare(ops[i], numbers[left[i]], numbers[right[i]], set);
+                        break;
+                    case AND: {
+                        long[] a = bits[left[i]];
+                        long[] b = bits[right[i]];
+                        for (int w = 0; w < words; w++) set[w] = a[w] & b[w];
+                        break;
+                    }
+                    case OR: {
+                        long[] a = bits[left[i]];
+                        long[] b = bits[right[i]];
+                        for (int w = 0; w < words; w++) set[w] = a[w] | b[w];
+                        break;
+                    }
+                    case NOT: {
+                        long[] a = bits[left[i]];
+                        for (int w = 0; w < words; w++) set[w] = ~a[w];
+                        // keep bits past the last analysis clear
+                        if ((count & 63) != 0) set[words - 1] &= (1L << count) - 1;
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown op " + ops[i]);
+                }
+            }
+        }
+
+        /**
+         * Index, in the last batch, of the first analysis at or after {@code from} that the rule
+         * matched, or -1.
+         */
+        public int nextMatch(int rule, int from) {
+            long[] set = bits[ruleSlots[rule]];
+            int words = (count + 63) >>> 6;
+            int w = from >>> 6;
+            if (w >= words) return -1;
+            long word = set[w] & (-1L << from);
+            while (true) {
+                if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+                if (++w == words) return -1;
+                word = set[w];
+            }
+        }
+
+        private void compare(byte op, double[] a, double[] b, long[] set) {
+            for (int w = 0, base = 0; base < count; w++, base += 64) {
+                int end = Math.min(64, count - base);
+                long word = 0L;
+                switch (op) {
+                    case LT: for (int k = 0; k < end; k++) if (a[base + k] < b[base + k]) word |= 1L << k; break;
+                    case LE: for (int k = 0; k < end; k++) if (a[base + k] <= b[base + k]) word |= 1L << k; break;
+                    case GT: for (int k = 0; k < end; k++) if (a[base + k] > b[base + k]) word |= 1L << k; break;
+                    case GE: for (int k = 0; k < end; k++) if (a[base + k] >= b[base + k]) word |= 1L << k; break;
+                    case EQ: for (int k = 0; k < end; k++) if (a[base + k] == b[base + k]) word |= 1L << k; break;
+                    default:
+                        for (int k = 0; k < end; k++) {
+                            double x = a[base + k];
+                            double y = b[base + k];
+                            if (x != y && !Double.isNaN(x) && !Double.isNaN(y)) word |= 1L << k;
+                        }
+                        break;
+                }
+                set[w] = word;
+            }
+        }
+
+        private void arithmetic(byte op, double[] a, double[] b, double[] out) {
+            switch (op) {
+                case ADD: for (int j = 0; j < count; j++) out[j] = a[j] + b[j]; break;
+                case SUB: for (int j = 0; j < count; j++) out[j] = a[j] - b[j]; break;
+                case MUL: for (int j = 0; j < count; j++) out[j] = a[j] * b[j]; break;
+                default: for (int j = 0; j < count; j++) out[j] = a[j] / b[j]; break;
+            }
+        }
+
+        private void allocate(int size) {
+            capacity = size;
+            int words = (size + 63) >>> 6;
+            for (int i = 0; i < ops.length; i++) {
+                byte op = ops[i];
+                if (op == TEXT_EQ || op >= LT) {
+                    bits[i] = new long[words];
+                } else {
+                    numbers[i] = new double[size];
+                    if (op == CONST) Arrays.fill(numbers[i], constants[i]);
+                }
+            }
+        }
+    }
+
+    private static double orNaN(Double d) {
+        return d == null ? Double.NaN : d;
+    }
+
+    private static NumberField technicalField(String timeframe, String name) {
+        int f = Arrays.asList(TECHNICALS).indexOf(name);
+        return (ar, gi) -> {
+            TechnicalSnapshot t = timeframe == null ? ar.technicals
+                    : ar.timeframes == null ? null : ar.timeframes.get(timeframe);
+            if (t == null) return Double.NaN;
+            switch (f) {
+                case 0: return t.rsi14;
+                case 1: return t.ema20;
+                case 2: return t.ema50;
+                case 3: return t.atr14;
+                case 4: return t.obv;
+                default: return t.volumeZScore;
+            }
+        };
+    }
+
+    /**
+     * Instruction list under construction; {@link #intern} returns the existing slot for a node
+     * already emitted, which is what shares subexpressions across rules.
+     */
+    static final class Builder {
+        private final Map<String, Integer> interned = new HashMap<String, Integer>();
+        private final List<Byte> ops = new ArrayList<Byte>();
+        private final List<Integer> left = new ArrayList<Integer>();
+        private final List<Integer> right = new ArrayList<Integer>();
+        private final List<Double> constants = new ArrayList<Double>();
+        private final List<NumberField> numberFields = new ArrayList<NumberField>();
+        private final List<TextField> textFields = new ArrayList<TextField>();
+        private final List<String> texts = new ArrayList<String>();
+
+        int constant(double value) {
+            return intern("c:" + Double.doubleToLongBits(value), CONST, -1, -1, value, null, null, null);
+        }
+
+        /**
+         * @return the slot, or -1 when no numeric field has that name
+         */
+        int field(String name) {
+            NumberField f = NUMBER_FIELDS.get(name);
+            if (f == null) {
+                int open = name.indexOf('[');
+                int close = name.indexOf("].");
+                if (!name.startsWith("technicals[") || open < 0 || close < open) return -1;
+                String attr = name.substring(close + 2);
+                if (!Arrays.asList(TECHNICALS).contains(attr)) return -1;
+                f = technicalField(name.substring(open + 1, close), attr);
+            }
+            return intern("f:" + name, FIELD, -1, -1, 0.0, f, null, null);
+        }
+
+        boolean isBoolean(int slot) {
+            byte op = ops.get(slot);
+            return op == TEXT_EQ || op >= LT;
+        }
+
+        boolean isTextField(String name) {
+            return TEXT_FIELDS.containsKey(name);
+        }
+
+        int textEquals(String name, String value) {
+            return intern("t:" + name + "=" + value, TEXT_EQ, -1, -1, 0.0, null, TEXT_FIELDS.get(name), value);
+        }
+
+        int unary(byte op, int operand) {
+            return intern(op + ":" + operand, op, operand, -1, 0.0, null, null, null);
+        }
+
+        int binary(byte op, int a, int b) {
+            if ((op == ADD || op == MUL || op == EQ || op == NE || op == AND || op == OR) && a > b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            return intern(op + ":" + a + ":" + b, op, a, b, 0.0, null, null, null);
+        }
+
+        private int intern(String key, byte op, int a, int b, double constant, NumberField field,
+                           TextField textField, String text) {
+            Integer existing = interned.get(key);
+            if (existing != null) return existing;
+            int slot = ops.size();
+            ops.add(op);
+            left.add(a);
+            right.add(b);
+            constants.add(constant);
+            numberFields.add(field);
+            textFields.add(textField);
+            texts.add(text);
+            interned.put(key, slot);
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.SymbolSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the symbols to refresh each cycle in universe scan mode. The universe is a symbol list
+ * file (one symbol per line, or CSV with the symbol first; re-read when it changes) plus whatever
+ * the day_losers screener returns that cycle.
+ * <p>
+ * Symbols are tiered from what the last refresh saw:
+ * <ul>
+ *   <li>HOT: listed by the screener, flagged BUY, or moving at least the hot threshold; every cycle</li>
+ *   <li>COLD: large caps moving less than the quiet threshold; every {@code cold.every.cycles}</li>
+ *   <li>WARM: everything else, including symbols never refreshed; every {@code warm.every.cycles}</li>
+ * </ul>
+ * Each cycle takes as many symbols as the request budget allows at the measured cost per symbol:
+ * due symbols first (HOT, then the most overdue), then spare budget goes to the stalest of the rest.
+ * When sharded, only symbols this node owns are planned, and the budget follows the node's share
+ * of the upstream rate. Unless set, the budget is one endpoint lane's rate times the cycle interval;
+ * lanes are paced separately, so that keeps the busiest one within its rate.
+ * <p>
+ * A universe file that cannot be read keeps the last universe; every failed read counts as
+ * {@code monitor.errors{source=universe}} and each new kind of failure is logged once.
+ */
+@Component
+public class ScanPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(ScanPlanner.class);
+
+    enum Tier { HOT, WARM, COLD }
+
+    // worst case until measured: quote and profile modules plus a chart
+    private static final double INITIAL_COST_PER_SYMBOL = 3.0;
+    private static final double MIN_COST_PER_SYMBOL = 0.1;
+
+    private final AnalysisStore analysisStore;
+    private final ShardService shards;
+    private final TrafficController trafficController;
+    private final Path universeFile;
+    private final int budget;
+    private final double hotMovePercent;
+    private final double quietMovePercent;
+    private final long coldMarketCap;
+    private final int warmEvery;
+    private final int coldEvery;
+    private final Counter universeErrors;
+
+    // guarded by this
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private Set<String> universe = Collections.emptySet();
+    private long universeModified = Long.MIN_VALUE;
+    private String universeError;
+    private int cycle;
+    private double costPerSymbol = INITIAL_COST_PER_SYMBOL;
+
+    private final AtomicInteger lastPlanned = new AtomicInteger();
+    private final AtomicInteger lastDeferred = new AtomicInteger();
+
+    private static class Entry {
+        final String symbol;
+        int lastRefresh = -1;
+        int lastListed = -1;
+        double changePercent = Double.NaN;
+        long marketCap;
+        // worked out at the start of each plan
+        Tier tier;
+        double staleness;
+
+        Entry(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    public ScanPlanner(AnalysisStore analysisStore, ShardService shards, TrafficController trafficController,
+                       @Value("${monitor.scan.universe.file:}") String universeFile,
+                       @Value("${monitor.scan.budget.requests:0}") int budget,
+                       @Value("${monitor.fetch.interval.seconds:120}") long cycleSeconds,
+                       @Value("${monitor.scan.hot.move.percent:3}") double hotMovePercent,
+                       @Value("${monitor.scan.quiet.move.percent:1}") double quietMovePercent,
+                       @Value("${monitor.scan.cold.market.cap:50000000000}") long coldMarketCap,
+                       @Value("${monitor.scan.warm.every.cycles:3}") int warmEvery,
+                       @Value("${monitor.scan.cold.every.cycles:10}") int coldEvery,
+                       MeterRegistry meterRegistry) {
+        this.analysisStore = analysisStore;
+        this.shards = shards;
+        this.trafficController = trafficController;
+        this.universeFile = universeFile == null || universeFile.trim().isEmpty() ? null : Paths.get(universeFile.trim());
+        // by default what one endpoint lane may send in a cycle, across all endpoints together
+        this.budget = budget > 0 ? budget
+                : (int) Math.max(1, Math.round(trafficController.getRequestsPerSecond() * cycleSeconds));
+        this.hotMovePercent = hotMovePercent;
+        this.quietMovePercent = quietMovePercent;
+        this.coldMarketCap = coldMarketCap;
+        this.warmEvery = Math.max(1, warmEvery);
+        this.coldEvery = Math.max(this.warmEvery, coldEvery);
+        this.universeErrors = meterRegistry.counter("monitor.errors", "source", "universe");
+        Gauge.builder("monitor.scan.universe.size", this, ScanPlanner::size)
+                .description("Symbols tracked by the universe scan")
+                .register(meterRegistry);
+        Gauge.builder("monitor.scan.planned", lastPlanned, AtomicInteger::get)
+                .description("Symbols picked for refresh in the last cycle")
+                .register(meterRegistry);
+        Gauge.builder("monitor.scan.deferred", lastDeferred, AtomicInteger::get)
+                .description("Due symbols left for a later cycle by the request budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts a cycle and returns the symbols to refresh in it, highest priority first.
+     *
+     * @param listed    symbols returned by the screener this cycle
+     * @param requested upstream requests already spent this cycle
+     */
+    public synchronized List<String> plan(Collection<String> listed, long requested) {
+        cycle++;
+        reloadUniverse();
+        for (String symbol : listed) {
+            String key = AnalysisStore.normalize(symbol);
+            Entry e = entries.get(key);
+            if (e == null) {
+                e = new Entry(symbol);
+                entries.put(key, e);
+            }
+            e.lastListed = cycle;
+        }
+        // screener-only symbols are dropped once they have been off the list for a cold interval
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> me = it.next();
+            if (!universe.contains(me.getKey()) && cycle - me.getValue().lastListed > coldEvery) it.remove();
+        }
+
+        double share = trafficController.getRateShare();
+        int capacity = (int) Math.max(0, Math.floor((budget * share - requested) / costPerSymbol));
+        List<Entry> due = new ArrayList<Entry>();
+        List<Entry> rest = new ArrayList<Entry>();
+        for (Entry e : entries.values()) {
+            if (!shards.owns(e.symbol)) continue;
+            e.tier = tierOf(e);
+            e.staleness = staleness(e);
+            if (e.staleness >= 1.0) due.add(e);
+            else rest.add(e);
+        }
+        Collections.sort(due, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                int cmp = a.tier.compareTo(b.tier);
+                if (cmp != 0) return cmp;
+                cmp = Double.compare(b.staleness, a.staleness);
+                if (cmp != 0) return cmp;
+                return Double.compare(move(b), move(a));
+            }
+        });
+        Collections.sort(rest, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Double.compare(b.staleness, a.staleness);
+            }
+        });
+
+        List<String> picked = new ArrayList<String>(Math.min(capacity, entries.size()));
+        for (Entry e : due) {
+            if (picked.size() >= capacity) break;
+            picked.add(e.symbol);
+            e.lastRefresh = cycle;
+        }
+        lastDeferred.set(due.size() - picked.size());
+        for (Entry e : rest) {
+            if (picked.size() >= capacity) break;
+            picked.add(e.symbol);
+            e.lastRefresh = cycle;
+        }
+        lastPlanned.set(picked.size());
+        return picked;
+    }
+
+    /**
+     * Records what a refresh saw, for the symbol's next tiering. Unknown symbols are ignored.
+     */
+    public synchronized void observe(SymbolSnapshot snapshot) {
+        Entry e = entries.get(AnalysisStore.normalize(snapshot.symbol));
+        if (e == null) return;
+        if (snapshot.quote != null) e.changePercent = snapshot.quote.changePercent;
+        if (snapshot.info != null) e.marketCap = snapshot.info.marketCap;
+    }
+
+    /**
+     * Updates the cost per symbol from the requests the refreshes of this cycle actually sent.
+     */
+    public synchronized void completeCycle(int refreshed, long requests) {
+        if (refreshed <= 0) return;
+        double measured = Math.max(MIN_COST_PER_SYMBOL, (double) requests / refreshed);
+        costPerSymbol = 0.7 * costPerSymbol + 0.3 * measured;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Tier tierOf(Entry e) {
+        if (e.lastListed == cycle || move(e) >= hotMovePercent) return Tier.HOT;
+        AnalysisResult ar = analysisStore.get(e.symbol);
+        if (ar != null && "BUY".equals(ar.signal)) return Tier.HOT;
+        if (e.marketCap >= coldMarketCap && move(e) < quietMovePercent) return Tier.COLD;
+        return Tier.WARM;
+    }
+
+    // cycles since the last refresh over the tier's interval; 1 or more means due
+    private double staleness(Entry e) {
+        if (e.lastRefresh < 0) return Double.MAX_VALUE;
+        int every = e.tier == Tier.HOT ? 1 : e.tier == Tier.WARM ? warmEvery : coldEvery;
+        return (double) (cycle - e.lastRefresh) / every;
+    }
+
+    private static double move(Entry e) {
+        return Double.isNaN(e.changePercent) ? 0.0 : Math.abs(e.changePercent);
+    }
+
+    private void reloadUniverse() {
+        if (universeFile == null) return;
+        long modified = Long.MIN_VALUE;
+        try {
+            modified = Files.getLastModifiedTime(universeFile).toMillis();
+            if (modified == universeModified) return;
+            Set<String> symbols = new LinkedHashSet<String>();
+            for (String line : Files.readAllLines(universeFile, StandardCharsets.UTF_8)) {
+                String symbol = line.trim().split("[,;\\s]", 2)[0].trim();
+                if (symbol.isEmpty() || symbol.startsWith("#") || "symbol".equalsIgnoreCase(symbol)) continue;
+                String key = AnalysisStore.normalize(symbol);
+                symbols.add(key);
+                if (!entries.containsKey(key)) entries.put(key, new Entry(key));
+            }
+            universe = symbols;
+            universeModified = modified;
+            universeError = null;
+            log.info("Universe file {} loaded: {} symbols", universeFile, symbols.size());
+        } catch (IOException e) {
+            // keep the last universe read; each failure is logged once, and again if the file changes
+            universeErrors.increment();
+            String error = modified + " " + e;
+            if (!error.equals(universeError)) {
+                log.warn("Cannot read universe file {}, keeping {} symbols: {}", universeFile, universe.size(), e.toString());
+            }
+            universeError = error;
+        }
+    }
+}
@@ -1,31 +1,130 @@
 package com.example.stockmonitor.service;
 
+import com.example.stockmonitor.model.BarSeries;
 import com.example.stockmonitor.model.StockModels.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.time.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs the scan cycle. Records {@code monitor.cycle.duration}, {@code monitor.cycle.stage} per
+ * stage (topLosers, quoteSummary, chart, indicators, timeframes, screening) and {@code monitor.screened.out}
+ * per filter that dropped a symbol. With {@code monitor.scan.mode=universe} the symbols to refresh
+ * come from {@link ScanPlanner} rather than the top of the screener. Each finished analysis is
+ * passed straight to {@link AlertService}. Only symbols {@link ShardService} assigns to this node
+ * are scanned; the screener is asked for a page per member so each node still fills its cycle.
+ */
 @Service
 public class SchedulerService {
 
+    private static final Logger log = LoggerFactory.getLogger(SchedulerService.class);
+
     private final MarketDataService marketData;
     private final ScreeningService screening;
     private final GreedIndexService greedIndexService;
 
-    @Value("${monitor.max.symbols.per.cycle:30}")
+    @Value("${monitor.max.symbols.per.cycle:100}")
     private int maxSymbolsPerCycle;
 
-    private final Map<String, AnalysisResult> latestAnalyses = new ConcurrentHashMap<String, AnalysisResult>();
+    private final ScanPlanner scanPlanner;
+    private final boolean universeMode;
+    private final AlertService alertService;
+    private final ShardService shards;
+
+    private final AnalysisStore analysisStore;
+    private final TimeSeriesStore timeSeries;
     private volatile GreedIndex latestGreedIndex;
+    private final AtomicLong lastCycleUpstreamRequests = new AtomicLong();
+    private final ExecutorService pipeline;
+    private final MeterRegistry meterRegistry;
+    private final Timer cycleTimer;
+    private final Timer topLosersTimer;
+    private final Timer quoteSummaryTimer;
+    private final Timer chartTimer;
+    private final Timer indicatorsTimer;
+    private final Timer timeframesTimer;
+    private final Timer screeningTimer;
+    private final Counter fetchFailed;
+    private final Counter notDown;
+    private final Counter failedFundamentals;
+    private final Counter pipelineErrors;
 
-    public SchedulerService(MarketDataService marketData, ScreeningService screening, GreedIndexService greedIndexService) {
+    public SchedulerService(MarketDataService marketData, ScreeningService screening, GreedIndexService greedIndexService,
+                            AnalysisStore analysisStore, TimeSeriesStore timeSeries, ScanPlanner scanPlanner,
+                            AlertService alertService, ShardService shards, MeterRegistry meterRegistry,
+                            @Value("${monitor.pipeline.concurrency:8}") int concurrency,
+                            @Value("${monitor.scan.mode:losers}") String scanMode) {
         this.marketData = marketData;
+        this.scanPlanner = scanPlanner;
+        this.universeMode = "universe".equalsIgnoreCase(scanMode);
+        this.alertService = alertService;
+        this.shards = shards;
         this.screening = screening;
         this.greedIndexService = greedIndexService;
+        this.analysisStore = analysisStore;
+        this.timeSeries = timeSeries;
+        this.pipeline = Executors.newFixedThreadPool(Math.max(1, concurrency), new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "scan-pipeline-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.meterRegistry = meterRegistry;
+        this.cycleTimer = Timer.builder("monitor.cycle.duration")
+                .description("Wall time of a full scan cycle")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.topLosersTimer = stageTimer(meterRegistry, "topLosers");
+        this.quoteSummaryTimer = stageTimer(meterRegistry, "quoteSummary");
+        this.chartTimer = stageTimer(meterRegistry, "chart");
+        this.indicatorsTimer = stageTimer(meterRegistry, "indicators");
+        this.timeframesTimer = stageTimer(meterRegistry, "timeframes");
+        this.screeningTimer = stageTimer(meterRegistry, "screening");
+        this.fetchFailed = screenedOut(meterRegistry, "fetchFailed");
+        this.notDown = screenedOut(meterRegistry, "notDown");
+        this.failedFundamentals = screenedOut(meterRegistry, "fundamentals");
+        this.pipelineErrors = screenedOut(meterRegistry, "error");
+        Gauge.builder("monitor.cycle.upstream.requests", lastCycleUpstreamRequests, AtomicLong::get)
+                .description("Upstream market data requests sent during the last scan cycle")
+                .register(meterRegistry);
+        FunctionCounter.builder("monitor.upstream.requests", marketData, MarketDataService::getUpstreamRequestCount)
+                .description("Upstream market data requests sent since startup")
+                .register(meterRegistry);
+    }
+
+    private static Timer stageTimer(MeterRegistry registry, String stage) {
+        return Timer.builder("monitor.cycle.stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter screenedOut(MeterRegistry registry, String filter) {
+        return Counter.builder("monitor.screened.out")
+                .description("Symbols dropped from a cycle, by the filter that dropped them")
+                .tag("filter", filter)
+                .register(registry);
     }
 
     private boolean isUsMarketOpenNow() {
@@ -41,38 +140,108 @@ public class SchedulerService {
 
     @Scheduled(fixedDelayString = "${monitor.fetch.interval.seconds:120}000")
     public void tick() {
-        if (!isUsMarketOpenNow()) return;
+        if (marketData.followsMarketHours() && !isUsMarketOpenNow()) return;
+        cycleTimer.record(this::runCycle);
+    }
+
+    private void runCycle() {
+        long requestsBefore = marketData.getUpstreamRequestCount();
+        CompletableFuture<GreedIndex> greed = CompletableFuture.supplyAsync(greedIndexService::fetchFearGreed, pipeline);
+        int listed = maxSymbolsPerCycle * shards.memberCount();
+        List<Candidate> candidates = topLosersTimer.record(() -> marketData.fetchTopLoserCandidates(listed));
         try {
-            latestGreedIndex = greedIndexService.fetchFearGreed();
-        } catch (Exception ignored) {}
+            latestGreedIndex = greed.join();
+            if (latestGreedIndex == null) greedFailed(null);
+        } catch (Exception e) {
+            greedFailed(e);
+        }
 
-        List<Candidate> candidates = marketData.fetchTopLoserCandidates(maxSymbolsPerCycle);
-        int processed = 0;
+        List<String> symbols = new ArrayList<String>(candidates.size());
         for (Candidate c : candidates) {
-            if (processed >= maxSymbolsPerCycle) break;
-            String symbol = c.symbol;
-            TickerInfo info = marketData.fetchTickerInfo(symbol);
-            Quote quote = marketData.fetchQuote(symbol);
-            if (quote == null) continue;
-            if (quote.changePercent > 0) continue; // only drops
-            Fundamentals f = marketData.fetchFundamentals(symbol);
-            if (!screening.isQualityFundamentally(f, info)) continue;
-            TechnicalSnapshot t = marketData.buildTechnicals(symbol);
-            AnalysisResult ar = screening.buildAnalysis(symbol,
-                    info != null ? (info.shortName != null ? info.shortName : info.longName) : symbol,
-                    info != null ? info.sector : null,
-                    info != null ? info.industry : null,
-                    quote, t, f, latestGreedIndex);
-            latestAnalyses.put(symbol, ar);
-            processed++;
+            if (!shards.owns(c.symbol)) continue;
+            if (!universeMode && symbols.size() >= maxSymbolsPerCycle) break;
+            symbols.add(c.symbol);
         }
+        long requestsPlanned = marketData.getUpstreamRequestCount();
+        if (universeMode) symbols = scanPlanner.plan(symbols, requestsPlanned - requestsBefore);
+
+        List<CompletableFuture<AnalysisResult>> inFlight = new ArrayList<CompletableFuture<AnalysisResult>>(symbols.size());
+        for (String symbol : symbols) {
+            inFlight.add(analyzeAsync(symbol, latestGreedIndex));
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+        analysisStore.completeCycle(latestGreedIndex);
+        long requestsAfter = marketData.getUpstreamRequestCount();
+        if (universeMode) scanPlanner.completeCycle(symbols.size(), requestsAfter - requestsPlanned);
+        lastCycleUpstreamRequests.set(requestsAfter - requestsBefore);
+    }
+
+    /**
+     * Runs one symbol through fetch, fundamental screen, chart and indicators, then analysis.
+     * A stage returning null drops the symbol, so rejected symbols never fetch their chart.
+     */
+    private CompletableFuture<AnalysisResult> analyzeAsync(String symbol, GreedIndex gi) {
+        return CompletableFuture.supplyAsync(() -> quoteSummaryTimer.record(() -> marketData.fetchSnapshot(symbol)), pipeline)
+                .thenApply(snapshot -> screeningTimer.record(() -> screen(snapshot)))
+                .thenApply(snapshot -> snapshot == null ? null : analyze(snapshot, gi))
+                .exceptionally(e -> {
+                    pipelineErrors.increment();
+                    log.warn("Analysis of {} failed", symbol, e);
+                    return null;
+                });
+    }
+
+    private void greedFailed(Exception e) {
+        meterRegistry.counter("monitor.errors", "source", "greedIndex").increment();
+        log.warn("Fear & Greed index unavailable{}", e != null ? ": " + e : "");
+    }
+
+    private SymbolSnapshot screen(SymbolSnapshot snapshot) {
+        if (snapshot == null) {
+            fetchFailed.increment();
+            return null;
+        }
+        if (universeMode) scanPlanner.observe(snapshot);
+        if (!(snapshot.quote.changePercent <= 0)) { // only drops; NaN is not one
+            notDown.increment();
+            return null;
+        }
+        if (!screening.isQualityFundamentally(snapshot.fundamentals, snapshot.info)) {
+            failedFundamentals.increment();
+            return null;
+        }
+        return snapshot;
+    }
+
+    private AnalysisResult analyze(SymbolSnapshot snapshot, GreedIndex gi) {
+        String symbol = snapshot.symbol;
+        TickerInfo info = snapshot.info;
+        BarSeries bars = chartTimer.record(() -> marketData.fetchChartBars(symbol));
+        TechnicalSnapshot t = indicatorsTimer.record(() -> marketData.buildTechnicals(symbol, bars));
+        Map<String, TechnicalSnapshot> timeframes =
+                timeframesTimer.record(() -> marketData.buildTimeframeTechnicals(symbol, bars));
+        AnalysisResult ar = screeningTimer.record(() -> screening.buildAnalysis(symbol,
+                info != null ? (info.shortName != null ? info.shortName : info.longName) : symbol,
+                info != null ? info.sector : null,
+                info != null ? info.industry : null,
+                snapshot.quote, t, snapshot.fundamentals, gi));
+        ar.timeframes = timeframes;
+        analysisStore.put(ar);
+        alertService.evaluate(ar);
+        return ar;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pipeline.shutdownNow();
     }
 
     public Collection<AnalysisResult> getLatestAnalyses() {
-        return latestAnalyses.values();
+        return analysisStore.values();
     }
 
     public GreedIndex getLatestGreedIndex() {
-        return latestGreedIndex;
+        GreedIndex gi = latestGreedIndex;
+        return gi != null ? gi : timeSeries.getLastGreedIndex();
     }
 }
\ No newline at end of file
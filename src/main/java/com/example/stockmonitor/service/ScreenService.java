@@ -0,0 +1,187 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.example.stockmonitor.model.StockModels.ScreenReport;
+import com.example.stockmonitor.model.StockModels.ScreenResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs user-defined screens against every published snapshot. Screens are read from
+ * {@code monitor.screens.file} (the bundled {@code screens.rules} when unset), one
+ * {@code name: expression} per line, and compiled together into one {@link RuleProgram}. The file
+ * is checked for changes every {@code monitor.screens.reload.seconds}; a changed file that fails
+ * to compile is logged and the screens already loaded stay in use.
+ */
+@Service
+public class ScreenService implements AnalysisListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ScreenService.class);
+    private static final String BUNDLED = "/screens.rules";
+    private static final Pattern LINE = Pattern.compile("([A-Za-z0-9_.-]+)\\s*:\\s*(.+)");
+
+    private final AnalysisStore analysisStore;
+    private final Path file;
+    private final Timer evaluationTimer;
+    private final Counter reloaded;
+    private final Counter reloadFailed;
+
+    private volatile RuleProgram program;
+    private volatile ScreenReport report;
+    // guarded by this
+    private long fileModified = Long.MIN_VALUE;
+    private GreedIndex lastGreed;
+    private RuleProgram evaluatorProgram;
+    private RuleProgram.Evaluator evaluator;
+    private long version;
+
+    public ScreenService(AnalysisStore analysisStore,
+                         @Value("${monitor.screens.file:}") String file,
+                         MeterRegistry meterRegistry) {
+        this.analysisStore = analysisStore;
+        this.file = file == null || file.trim().isEmpty() ? null : Paths.get(file.trim());
+        this.evaluationTimer = Timer.builder("monitor.screens.evaluation")
+                .description("Time to run every screen against a snapshot")
+                .register(meterRegistry);
+        this.reloaded = meterRegistry.counter("monitor.screens.reload", "result", "ok");
+        this.reloadFailed = meterRegistry.counter("monitor.screens.reload", "result", "error");
+        Gauge.builder("monitor.screens.rules", this, s -> s.program.ruleCount()).register(meterRegistry);
+        try {
+            if (this.file != null) this.fileModified = modified(this.file);
+            this.program = RuleProgram.compile(this.file == null ? readBundled() : readFile(this.file));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Cannot load screens from " + this.file + ": " + e.getMessage(), e);
+        }
+        evaluate(AnalysisSnapshot.EMPTY);
+        analysisStore.addListener(this);
+    }
+
+    public ScreenReport getReport() {
+        return report;
+    }
+
+    @Override
+    public void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current) {
+        evaluate(current);
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.screens.reload.seconds:5}000")
+    public void reload() {
+        if (file == null) return;
+        long modified = modified(file);
+        synchronized (this) {
+            if (modified == fileModified) return;
+            fileModified = modified;
+        }
+        try {
+            RuleProgram next = RuleProgram.compile(readFile(file));
+            program = next;
+            reloaded.increment();
+            log.info("Loaded {} screens ({} distinct terms) from {}", next.ruleCount(), next.size(), file);
+            evaluate(analysisStore.snapshot());
+        } catch (IOException | IllegalArgumentException e) {
+            reloadFailed.increment();
+            log.warn("Keeping current screens, {} not loaded: {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void evaluate(AnalysisSnapshot snapshot) {
+        long start = System.nanoTime();
+        RuleProgram p = program;
+        if (snapshot.getGreedIndex() != null) lastGreed = snapshot.getGreedIndex();
+        if (evaluator == null || evaluatorProgram != p) {
+            evaluator = p.newEvaluator();
+            evaluatorProgram = p;
+        }
+        int rules = p.ruleCount();
+        List<AnalysisResult> items = new ArrayList<AnalysisResult>(snapshot.values());
+        evaluator.evaluate(items, lastGreed);
+        List<List<String>> matched = new ArrayList<List<String>>(rules);
+        for (int r = 0; r < rules; r++) {
+            List<String> symbols = new ArrayList<String>();
+            for (int j = evaluator.nextMatch(r, 0); j >= 0; j = evaluator.nextMatch(r, j + 1)) {
+                symbols.add(items.get(j).symbol);
+            }
+            matched.add(symbols);
+        }
+
+        ScreenReport rep = new ScreenReport();
+        rep.version = ++version;
+        rep.snapshotVersion = snapshot.getVersion();
+        rep.rules = rules;
+        rep.distinctTerms = p.size();
+        rep.screens = new ArrayList<ScreenResult>(rules);
+        for (int r = 0; r < rules; r++) {
+            ScreenResult sr = new ScreenResult();
+            sr.name = p.name(r);
+            sr.expression = p.source(r);
+            sr.symbols = matched.get(r);
+            Collections.sort(sr.symbols);
+            sr.matches = sr.symbols.size();
+            rep.screens.add(sr);
+        }
+        long elapsed = System.nanoTime() - start;
+        rep.evaluationMicros = elapsed / 1000;
+        evaluationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        report = rep;
+    }
+
+    private static Map<String, String> readBundled() {
+        InputStream in = ScreenService.class.getResourceAsStream(BUNDLED);
+        if (in == null) return Collections.emptyMap();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<String>();
+            for (String line; (line = r.readLine()) != null; ) lines.add(line);
+            return parse(lines);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read bundled screens", e);
+        }
+    }
+
+    private static Map<String, String> readFile(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parse(List<String> lines) {
+        Map<String, String> rules = new LinkedHashMap<String, String>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            Matcher m = LINE.matcher(line);
+            if (!m.matches()) throw new IllegalArgumentException("line " + (i + 1) + ": expected 'name: expression'");
+            if (rules.put(m.group(1), m.group(2).trim()) != null) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": screen '" + m.group(1) + "' defined twice");
+            }
+        }
+        return rules;
+    }
+
+    private static long modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
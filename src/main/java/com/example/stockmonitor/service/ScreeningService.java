@@ -1,7 +1,6 @@
 package com.example.stockmonitor.service;
 
 import com.example.stockmonitor.model.StockModels.*;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -10,9 +9,6 @@ import java.util.*;
 @Service
 public class ScreeningService {
 
-    @Value("${monitor.drop.threshold.primary:10}")
-    private double primaryDropThreshold;
-
     public boolean isQualityFundamentally(Fundamentals f, TickerInfo info) {
         if (info == null) return false;
         if (info.marketCap < 2_000_000_000L) return false; // prefer mid/large caps
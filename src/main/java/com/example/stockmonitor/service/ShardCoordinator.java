@@ -0,0 +1,45 @@
+package com.example.stockmonitor.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Membership and result exchange between monitor instances scanning shards of one universe,
+ * chosen with {@code monitor.shard.backend}. Node ids are short names of letters, digits,
+ * dots, dashes and underscores.
+ */
+public interface ShardCoordinator {
+
+    /**
+     * Backend name shown in the shard status.
+     */
+    String name();
+
+    /**
+     * Registers the node or refreshes its heartbeat, and returns the live members in id order.
+     * Members whose last heartbeat is older than the timeout are dropped; results of nodes no
+     * longer live are dropped once they are older than the timeout too.
+     */
+    List<String> heartbeat(String nodeId, Duration timeout) throws IOException;
+
+    /**
+     * Removes the node from the members; its results stay until a peer drops them.
+     */
+    void leave(String nodeId) throws IOException;
+
+    /**
+     * Replaces the node's published results.
+     */
+    void publish(String nodeId, byte[] results) throws IOException;
+
+    /**
+     * Changes whenever the node publishes; -1 when it has nothing published.
+     */
+    long resultsVersion(String nodeId) throws IOException;
+
+    /**
+     * The node's last published results, or null.
+     */
+    byte[] readResults(String nodeId) throws IOException;
+}
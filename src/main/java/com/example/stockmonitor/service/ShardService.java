@@ -0,0 +1,327 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.ShardResults;
+import com.example.stockmonitor.model.StockModels.ShardStatus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits the symbol universe between monitor instances. Live members come from the
+ * {@link ShardCoordinator} heartbeat every {@code monitor.shard.heartbeat.seconds}; each symbol
+ * belongs to one member on a consistent-hash ring with {@code monitor.shard.virtual.nodes} points
+ * per member, so a node joining or leaving moves only its own share of symbols.
+ * <p>
+ * After a cycle the analyses this node owns are published through the coordinator, and each
+ * heartbeat merges peers' newer analyses into {@link AnalysisStore}, so every node serves the
+ * whole universe. A peer's analysis of a symbol this node owns and already holds is never taken,
+ * so a stale export or a skewed clock cannot overwrite this node's own results. With
+ * {@code monitor.shard.shared.egress} set the upstream request rate is divided between the
+ * members, for instances behind one address and its rate limit.
+ */
+@Service
+public class ShardService implements AnalysisListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardService.class);
+
+    private final ShardCoordinator coordinator;
+    private final AnalysisStore analysisStore;
+    private final TrafficController trafficController;
+    private final ObjectMapper mapper;
+    private final String nodeId;
+    private final Duration timeout;
+    private final int virtualNodes;
+    private final boolean sharedEgress;
+    private final Counter rebalances;
+    private final Counter merged;
+    private final Counter failed;
+    private final ExecutorService exporter;
+    private final AtomicBoolean exportQueued = new AtomicBoolean();
+
+    private volatile Ring ring;
+    // only touched by the heartbeat
+    private final Map<String, Long> peerVersions = new HashMap<String, Long>();
+
+    public ShardService(ShardCoordinator coordinator, AnalysisStore analysisStore,
+                        TrafficController trafficController, ObjectMapper mapper,
+                        @Value("${monitor.shard.node.id:}") String nodeId,
+                        @Value("${monitor.shard.timeout.seconds:20}") long timeoutSeconds,
+                        @Value("${monitor.shard.virtual.nodes:128}") int virtualNodes,
+                        @Value("${monitor.shard.shared.egress:false}") boolean sharedEgress,
+                        MeterRegistry meterRegistry) {
+        this.coordinator = coordinator;
+        this.analysisStore = analysisStore;
+        this.trafficController = trafficController;
+        this.mapper = mapper;
+        this.nodeId = nodeId == null || nodeId.trim().isEmpty() ? defaultNodeId() : sanitize(nodeId.trim());
+        this.timeout = Duration.ofSeconds(Math.max(1, timeoutSeconds));
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.sharedEgress = sharedEgress;
+        this.rebalances = Counter.builder("monitor.shard.rebalances")
+                .description("Changes of shard membership seen by this node")
+                .register(meterRegistry);
+        this.merged = Counter.builder("monitor.shard.merged")
+                .description("Analyses taken from other shards")
+                .register(meterRegistry);
+        this.failed = Counter.builder("monitor.shard.errors")
+                .description("Failed heartbeats, publishes and peer reads")
+                .register(meterRegistry);
+        this.exporter = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "shard-export");
+            t.setDaemon(true);
+            return t;
+        });
+        this.ring = new Ring(Collections.singletonList(this.nodeId), this.virtualNodes);
+        Gauge.builder("monitor.shard.members", this, ShardService::memberCount)
+                .description("Live members sharing the symbol universe")
+                .register(meterRegistry);
+        try {
+            updateMembers(coordinator.heartbeat(this.nodeId, timeout));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot join " + coordinator.name() + " shard backend: " + e.getMessage(), e);
+        }
+        analysisStore.addListener(this);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public int memberCount() {
+        return ring.members.size();
+    }
+
+    /**
+     * Whether this node scans the symbol.
+     */
+    public boolean owns(String symbol) {
+        return nodeId.equals(ring.owner(AnalysisStore.normalize(symbol)));
+    }
+
+    public ShardStatus getStatus() {
+        Ring r = ring;
+        ShardStatus s = new ShardStatus();
+        s.nodeId = nodeId;
+        s.backend = coordinator.name();
+        s.members = r.members;
+        s.rateShare = trafficController.getRateShare();
+        for (AnalysisResult ar : analysisStore.values()) {
+            if (nodeId.equals(r.owner(AnalysisStore.normalize(ar.symbol)))) s.owned++;
+        }
+        s.merged = (long) merged.count();
+        return s;
+    }
+
+    @Override
+    public void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current) {
+        Ring r = ring;
+        if (r.members.size() < 2) return;
+        for (String key : current.getUpdated()) {
+            if (nodeId.equals(r.owner(key))) {
+                requestExport();
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${monitor.shard.heartbeat.seconds:5}000")
+    public void heartbeat() {
+        List<String> live;
+        try {
+            live = coordinator.heartbeat(nodeId, timeout);
+        } catch (IOException e) {
+            failed.increment();
+            log.warn("Shard heartbeat for {} failed: {}", nodeId, e.toString());
+            return;
+        }
+        updateMembers(live);
+        mergePeers(live);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        exporter.shutdownNow();
+        try {
+            // an export still running must not publish after the node has left
+            exporter.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            coordinator.leave(nodeId);
+        } catch (IOException e) {
+            log.warn("Could not leave the shard members: {}", e.toString());
+        }
+    }
+
+    private void updateMembers(List<String> live) {
+        List<String> members = new ArrayList<String>(live);
+        // a member never drops itself, even when its own heartbeat looks late
+        if (!members.contains(nodeId)) {
+            members.add(nodeId);
+            Collections.sort(members);
+        }
+        Ring previous = ring;
+        if (previous.members.equals(members)) return;
+        ring = new Ring(members, virtualNodes);
+        if (sharedEgress) trafficController.setRateShare(1.0 / members.size());
+        if (previous.members.size() > 1 || members.size() > 1) {
+            rebalances.increment();
+            log.info("Shard members now {} (this node {})", members, nodeId);
+        }
+        requestExport();
+    }
+
+    private void mergePeers(List<String> live) {
+        peerVersions.keySet().retainAll(live);
+        for (String peer : live) {
+            if (peer.equals(nodeId)) continue;
+            try {
+                long version = coordinator.resultsVersion(peer);
+                Long seen = peerVersions.get(peer);
+                if (version < 0 || (seen != null && seen == version)) continue;
+                byte[] data = coordinator.readResults(peer);
+                if (data == null) continue;
+                peerVersions.put(peer, version);
+                ShardResults results = mapper.readValue(data, ShardResults.class);
+                if (results.analyses == null || results.refreshedAt == null) continue;
+                merged.increment(analysisStore.merge(notOwnedHere(results.analyses), results.refreshedAt));
+            } catch (IOException e) {
+                failed.increment();
+                log.warn("Could not merge results of shard {}: {}", peer, e.toString());
+            }
+        }
+    }
+
+    // symbols this node owns are only taken from a peer while this node has nothing for them
+    private List<AnalysisResult> notOwnedHere(List<AnalysisResult> analyses) {
+        Ring r = ring;
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        List<AnalysisResult> foreign = new ArrayList<AnalysisResult>(analyses.size());
+        for (AnalysisResult ar : analyses) {
+            String key = AnalysisStore.normalize(ar.symbol);
+            if (nodeId.equals(r.owner(key)) && snapshot.get(key) != null) continue;
+            foreign.add(ar);
+        }
+        return foreign;
+    }
+
+    private void requestExport() {
+        if (ring.members.size() < 2 || !exportQueued.compareAndSet(false, true)) return;
+        exporter.execute(() -> {
+            exportQueued.set(false);
+            export();
+        });
+    }
+
+    // everything this node owns now, including analyses a previous owner scanned
+    private void export() {
+        Ring r = ring;
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        ShardResults results = new ShardResults();
+        results.nodeId = nodeId;
+        results.publishedAt = Instant.now();
+        results.analyses = new ArrayList<AnalysisResult>();
+        results.refreshedAt = new HashMap<String, Instant>();
+        for (AnalysisResult ar : snapshot.values()) {
+            String key = AnalysisStore.normalize(ar.symbol);
+            if (!nodeId.equals(r.owner(key))) continue;
+            results.analyses.add(ar);
+            results.refreshedAt.put(key, snapshot.getRefreshedAt(key));
+        }
+        try {
+            coordinator.publish(nodeId, mapper.writeValueAsBytes(results));
+        } catch (IOException e) {
+            failed.increment();
+            log.warn("Could not publish shard results of {}: {}", nodeId, e.toString());
+        }
+    }
+
+    private static String defaultNodeId() {
+        // "pid@host" on HotSpot
+        String[] parts = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+        return sanitize(parts.length == 2 ? parts[1] + "-" + parts[0] : parts[0]);
+    }
+
+    private static String sanitize(String id) {
+        return id.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * Consistent-hash ring: each member at {@code virtualNodes} points, a key owned by the
+     * first point at or after its hash.
+     */
+    static final class Ring {
+        final List<String> members;
+        private final long[] points;
+        private final String[] owners;
+
+        Ring(List<String> members, int virtualNodes) {
+            this.members = Collections.unmodifiableList(new ArrayList<String>(members));
+            int n = members.size() * virtualNodes;
+            final long[] hashes = new long[n];
+            final String[] names = new String[n];
+            Integer[] order = new Integer[n];
+            for (int m = 0, i = 0; m < members.size(); m++) {
+                for (int v = 0; v < virtualNodes; v++, i++) {
+                    hashes[i] = hash(members.get(m) + "#" + v);
+                    names[i] = members.get(m);
+                    order[i] = i;
+                }
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int cmp = Long.compare(hashes[a], hashes[b]);
+                    return cmp != 0 ? cmp : names[a].compareTo(names[b]);
+                }
+            });
+            this.points = new long[n];
+            this.owners = new String[n];
+            for (int i = 0; i < n; i++) {
+                points[i] = hashes[order[i]];
+                owners[i] = names[order[i]];
+            }
+        }
+
+        String owner(String key) {
+            int i = Arrays.binarySearch(points, hash(key));
+            if (i < 0) i = -i - 1;
+            return owners[i == points.length ? 0 : i];
+        }
+
+        // FNV-1a over UTF-8, finished with the MurmurHash3 mix so nearby names spread out
+        static long hash(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+                h ^= b & 0xff;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+
+import java.time.Instant;
+
+/**
+ * Incremental RSI/EMA/ATR/OBV/volume z-score for one symbol. Each new bar is applied in constant
+ * time and the arithmetic mirrors the batch methods in {@link IndicatorService} step for step,
+ * so both produce identical snapshots for the same series.
+ * <p>
+ * The last bar of an intraday series is usually still forming, so it is never committed: the
+ * snapshot is taken from a copy of the committed state with the last bar applied on top. The
+ * newest {@value #TAIL_CHECK} committed bars are compared on every call, and any revision among
+ * them starts the state over.
+ */
+public class StreamingIndicators {
+
+    static final int RSI_PERIOD = 14;
+    static final int ATR_PERIOD = 14;
+    static final int EMA_FAST = 20;
+    static final int EMA_SLOW = 50;
+    static final int ZSCORE_WINDOW = 100;
+    static final int MIN_BARS = 15;
+    static final int TAIL_CHECK = 3;
+
+    private State committed = new State();
+    private long firstTime = Long.MIN_VALUE;
+    // the newest committed bars, oldest first, as they were when committed
+    private final long[] tailTimes = new long[TAIL_CHECK];
+    private final double[] tailHighs = new double[TAIL_CHECK];
+    private final double[] tailLows = new double[TAIL_CHECK];
+    private final double[] tailCloses = new double[TAIL_CHECK];
+    private final long[] tailVolumes = new long[TAIL_CHECK];
+    volatile Instant lastAccess = Instant.now();
+
+    public synchronized TechnicalSnapshot snapshot(BarSeries bars) {
+        lastAccess = Instant.now();
+        if (bars == null || bars.size() < MIN_BARS) {
+            return new TechnicalSnapshot();
+        }
+        if (!continues(bars)) {
+            committed = new State();
+            firstTime = bars.firstTime();
+        }
+        double[] closes = bars.closes();
+        double[] highs = bars.highs();
+        double[] lows = bars.lows();
+        long[] volumes = bars.volumes();
+        int last = bars.size() - 1;
+        for (int i = committed.count; i < last; i++) {
+            committed.update(closes[i], highs[i], lows[i], volumes[i]);
+        }
+        int from = Math.max(0, committed.count - TAIL_CHECK);
+        for (int i = from, j = 0; i < committed.count; i++, j++) {
+            tailTimes[j] = bars.time(i);
+            tailHighs[j] = highs[i];
+            tailLows[j] = lows[i];
+            tailCloses[j] = closes[i];
+            tailVolumes[j] = volumes[i];
+        }
+        State tip = committed.copy();
+        tip.update(closes[last], highs[last], lows[last], volumes[last]);
+        return tip.toSnapshot();
+    }
+
+    /**
+     * True when the committed bars are still an unchanged prefix of the series.
+     */
+    private boolean continues(BarSeries bars) {
+        if (firstTime != bars.firstTime()) return false;
+        int c = committed.count;
+        if (c == 0) return true;
+        if (c > bars.size() - 1) return false;
+        int from = Math.max(0, c - TAIL_CHECK);
+        for (int i = from, j = 0; i < c; i++, j++) {
+            // compared as bits, so a NaN gap in the data still counts as unchanged
+            if (bars.time(i) != tailTimes[j]
+                    || !same(bars.high(i), tailHighs[j])
+                    || !same(bars.low(i), tailLows[j])
+                    || !same(bars.close(i), tailCloses[j])
+                    || bars.volume(i) != tailVolumes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    static final class State {
+        int count;
+        double prevClose;
+        double gain;
+        double loss;
+        double avgGain;
+        double avgLoss;
+        double emaFast;
+        double emaSlow;
+        double trSum;
+        double atr;
+        double obv;
+        long[] volumes = new long[ZSCORE_WINDOW];
+
+        void update(double close, double high, double low, long volume) {
+            if (count == 0) {
+                emaFast = close;
+                emaSlow = close;
+            } else {
+                double change = close - prevClose;
+                if (count <= RSI_PERIOD) {
+                    if (change >= 0) gain += change; else loss -= change;
+                    if (count == RSI_PERIOD) {
+                        avgGain = gain / RSI_PERIOD;
+                        avgLoss = loss / RSI_PERIOD;
+                    }
+                } else {
+                    double g = Math.max(0, change);
+                    double l = Math.max(0, -change);
+                    avgGain = (avgGain * (RSI_PERIOD - 1) + g) / RSI_PERIOD;
+                    avgLoss = (avgLoss * (RSI_PERIOD - 1) + l) / RSI_PERIOD;
+                }
+
+                double kFast = 2.0 / (EMA_FAST + 1.0);
+                double kSlow = 2.0 / (EMA_SLOW + 1.0);
+                emaFast = close * kFast + emaFast * (1.0 - kFast);
+                emaSlow = close * kSlow + emaSlow * (1.0 - kSlow);
+
+                double tr = Math.max(high - low,
+                        Math.max(Math.abs(high - prevClose), Math.abs(low - prevClose)));
+                if (count <= ATR_PERIOD) {
+                    trSum += tr;
+                    if (count == ATR_PERIOD) atr = trSum / ATR_PERIOD;
+                } else {
+                    atr = (atr * (ATR_PERIOD - 1) + tr) / ATR_PERIOD;
+                }
+
+                if (change > 0) obv += volume;
+                else if (change < 0) obv -= volume;
+            }
+            volumes[count % ZSCORE_WINDOW] = volume;
+            prevClose = close;
+            count++;
+        }
+
+        TechnicalSnapshot toSnapshot() {
+            TechnicalSnapshot t = new TechnicalSnapshot();
+            if (count < MIN_BARS) return t;
+            if (avgLoss == 0) {
+                t.rsi14 = 100.0;
+            } else {
+                double rs = avgGain / avgLoss;
+                t.rsi14 = 100.0 - (100.0 / (1.0 + rs));
+            }
+            t.ema20 = emaFast;
+            t.ema50 = emaSlow;
+            t.atr14 = atr;
+            t.obv = obv;
+            t.volumeZScore = volumeZScore();
+            return t;
+        }
+
+        // same two-pass, oldest-to-newest order as IndicatorService.zscore over the window
+        private double volumeZScore() {
+            int n = Math.min(ZSCORE_WINDOW, count);
+            int start = count - n;
+            double mean = 0.0;
+            for (int i = start; i < count; i++) mean += volumes[i % ZSCORE_WINDOW];
+            mean /= n;
+            double var = 0.0;
+            for (int i = start; i < count; i++) {
+                double d = volumes[i % ZSCORE_WINDOW] - mean;
+                var += d * d;
+            }
+            var /= n;
+            double std = Math.sqrt(var);
+            if (std == 0) return 0.0;
+            double last = volumes[(count - 1) % ZSCORE_WINDOW];
+            return (last - mean) / std;
+        }
+
+        State copy() {
+            State s = new State();
+            s.count = count;
+            s.prevClose = prevClose;
+            s.gain = gain;
+            s.loss = loss;
+            s.avgGain = avgGain;
+            s.avgLoss = avgLoss;
+            s.emaFast = emaFast;
+            s.emaSlow = emaSlow;
+            s.trSum = trSum;
+            s.atr = atr;
+            s.obv = obv;
+            s.volumes = volumes.clone();
+            return s;
+        }
+    }
+}
@@ -0,0 +1,723 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.example.stockmonitor.model.StockModels.Quote;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only on-disk history under {@code monitor.storage.dir}:
+ * <ul>
+ *   <li>{@code bars/SYMBOL.bin} - fixed 48-byte bar records; a revised bar is appended again and
+ *   the later record wins on read</li>
+ *   <li>{@code quotes/SYMBOL.bin} - fixed 80-byte quote records</li>
+ *   <li>{@code journal/yyyy-MM-dd.log} - type-tagged, length-prefixed JSON analyses and greed index</li>
+ *   <li>{@code journal/checkpoint.bin} - the same records holding only the last value of each,
+ *   rewritten at each day rollover and every {@code monitor.storage.checkpoint.minutes}</li>
+ * </ul>
+ * Bar and quote files are read through memory maps, journals are streamed. At startup the
+ * checkpoint and the journal written after it are published to {@link AnalysisStore} as one
+ * snapshot; bars are loaded per symbol on first use by {@link BarStore}.
+ * Data older than {@code monitor.storage.retention.days} is removed every few hours.
+ * <p>
+ * Storage failures never stop a scan, but each is counted as {@code monitor.errors{source=storage}}
+ * and logged, at most once a minute per kind of operation.
+ */
+@Component
+public class TimeSeriesStore implements AnalysisListener, SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    static final int BAR_RECORD_BYTES = 48;
+    static final int QUOTE_RECORD_BYTES = 80;
+    private static final byte ANALYSIS = 'A';
+    private static final byte GREED = 'G';
+    private static final byte CHECKPOINT = 'C';
+    private static final String CHECKPOINT_FILE = "checkpoint.bin";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final long WARN_INTERVAL_MILLIS = 60_000L;
+    private static final int FILE_LOCKS = 64;
+
+    private final AnalysisStore analysisStore;
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final Path barsDir;
+    private final Path quotesDir;
+    private final Path journalDir;
+    private final Duration retention;
+    private final Counter errors;
+    private final Map<String, Long> lastWarned = new ConcurrentHashMap<String, Long>();
+    // rewrites of a bar or quote file (compaction, retention) exclude appends to it
+    private final Object[] fileLocks = new Object[FILE_LOCKS];
+
+    // guarded by this
+    private FileChannel journal;
+    private LocalDate journalDay;
+    // what the journal holds: the last analysis written per symbol
+    private final Map<String, AnalysisResult> journaled = new HashMap<String, AnalysisResult>();
+    private JournalPosition checkpointed;
+    // valid length of each journal replayed at startup
+    private final Map<String, Long> restoredEnds = new HashMap<String, Long>();
+    private final Object checkpointLock = new Object();
+
+    private volatile GreedIndex lastGreedIndex;
+
+    public TimeSeriesStore(AnalysisStore analysisStore, ObjectMapper mapper,
+                           @Value("${monitor.storage.enabled:true}") boolean enabled,
+                           @Value("${monitor.storage.dir:data}") String dir,
+                           @Value("${monitor.storage.retention.days:365}") long retentionDays,
+                           MeterRegistry meterRegistry) {
+        this.analysisStore = analysisStore;
+        this.mapper = mapper;
+        this.enabled = enabled;
+        Path root = Paths.get(dir);
+        this.barsDir = root.resolve("bars");
+        this.quotesDir = root.resolve("quotes");
+        this.journalDir = root.resolve("journal");
+        this.retention = retentionDays > 0 ? Duration.ofDays(retentionDays) : null;
+        this.errors = meterRegistry.counter("monitor.errors", "source", "storage");
+        for (int i = 0; i < FILE_LOCKS; i++) fileLocks[i] = new Object();
+    }
+
+    /**
+     * Runs once every listener has registered with the store, so restored analyses reach them too.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(barsDir);
+            Files.createDirectories(quotesDir);
+            Files.createDirectories(journalDir);
+            restore();
+        } catch (IOException e) {
+            // start empty; the first cycle repopulates the store
+            failed("restore", journalDir, e);
+        } catch (RuntimeException e) {
+            errors.increment();
+            log.warn("Restore from {} failed, starting empty", journalDir, e);
+        }
+        analysisStore.addListener(this);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Greed index from the last completed cycle, including one restored from disk.
+     */
+    public GreedIndex getLastGreedIndex() {
+        return lastGreedIndex;
+    }
+
+    @Override
+    public void onSnapshotPublished(AnalysisSnapshot previous, AnalysisSnapshot current) {
+        for (String key : current.getUpdated()) {
+            AnalysisResult ar = current.get(key);
+            appendJournal(ANALYSIS, ar);
+            if (ar.quote != null) appendQuote(ar.symbol, ar.quote);
+        }
+        GreedIndex greedIndex = current.getGreedIndex();
+        // merged shard results carry the previous index over
+        if (greedIndex == null || greedIndex == previous.getGreedIndex()) return;
+        lastGreedIndex = greedIndex;
+        appendJournal(GREED, greedIndex);
+    }
+
+    // ---- bars ----
+
+    /**
+     * Appends bars {@code from..size-1} of the series to the symbol's bar file.
+     */
+    public void appendBars(String symbol, BarSeries bars, int from) {
+        if (!enabled || from >= bars.size()) return;
+        Path file = barFile(symbol);
+        synchronized (lockFor(file)) {
+            append(file, barRecords(bars, from), BAR_RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Every stored bar of the symbol at or after {@code since} (epoch seconds), with revisions
+     * resolved. A file holding many superseded records is rewritten in place. A file that cannot
+     * be read gives an empty series, like a symbol never stored, but is logged and counted.
+     */
+    public BarSeries loadBars(String symbol, long since) {
+        return loadBars(symbol, since, true);
+    }
+
+    /**
+     * Like {@link #loadBars} but never rewrites the file, for bulk readers such as backtests.
+     */
+    public BarSeries readBars(String symbol, long since) {
+        return loadBars(symbol, since, false);
+    }
+
+    private BarSeries loadBars(String symbol, long since, boolean compact) {
+        if (!enabled) return new BarSeries(0);
+        Path file = barFile(symbol);
+        BarSeries bars;
+        long records;
+        synchronized (lockFor(file)) {
+            try {
+                records = Files.size(file) / BAR_RECORD_BYTES;
+                bars = readFile(file);
+            } catch (NoSuchFileException e) {
+                return new BarSeries(0);
+            } catch (IOException e) {
+                failed("read bars", file, e);
+                return new BarSeries(0);
+            }
+            // superseded records make up a quarter of the file
+            if (compact && (records - bars.size()) * 4 > records) rewriteBars(file, bars, "compact bars");
+        }
+        bars.dropHead(bars.indexAtOrAfter(since));
+        return bars;
+    }
+
+    /**
+     * Symbols that have a bar file.
+     */
+    public List<String> storedSymbols() {
+        List<String> symbols = new ArrayList<String>();
+        if (!enabled) return symbols;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(barsDir, "*.bin")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                symbols.add(name.substring(0, name.length() - 4));
+            }
+        } catch (IOException e) {
+            failed("list bar files", barsDir, e);
+        }
+        Collections.sort(symbols);
+        return symbols;
+    }
+
+    // whole records in the file; a single mapping cannot exceed 2 GB
+    private static int records(FileChannel ch, int recordBytes, Path file) throws IOException {
+        long size = ch.size();
+        if (size > Integer.MAX_VALUE) throw new IOException(file + " is too large to map: " + size + " bytes");
+        return (int) (size / recordBytes);
+    }
+
+    private static BarSeries readFile(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            int records = records(ch, BAR_RECORD_BYTES, file);
+            if (records == 0) return new BarSeries(0);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, (long) records * BAR_RECORD_BYTES);
+            BarSeries bars = new BarSeries(records);
+            for (int r = 0; r < records; r++) {
+                long time = map.getLong();
+                double open = map.getDouble();
+                double high = map.getDouble();
+                double low = map.getDouble();
+                double close = map.getDouble();
+                long volume = map.getLong();
+                if (!bars.isEmpty() && time <= bars.lastTime()) bars.truncate(bars.indexAtOrAfter(time));
+                bars.add(time, open, high, low, close, volume);
+            }
+            return bars;
+        }
+    }
+
+    // callers hold the file's lock
+    private void rewriteBars(Path file, BarSeries bars, String action) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.deleteIfExists(tmp);
+            if (bars.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            write(tmp, barRecords(bars, 0), BAR_RECORD_BYTES);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the file as it was stays valid
+            failed(action, file, e);
+        }
+    }
+
+    // ---- quotes ----
+
+    public void appendQuote(String symbol, Quote q) {
+        if (!enabled) return;
+        ByteBuffer buf = ByteBuffer.allocate(QUOTE_RECORD_BYTES);
+        buf.putLong(q.asOf != null ? q.asOf.toEpochMilli() : System.currentTimeMillis());
+        buf.putDouble(q.price).putDouble(q.changePercent).putDouble(q.previousClose);
+        buf.putDouble(q.open).putDouble(q.dayLow).putDouble(q.dayHigh);
+        buf.putLong(q.volume).putLong(q.averageVolume).putLong(q.marketCap);
+        buf.flip();
+        Path file = quoteFile(symbol);
+        synchronized (lockFor(file)) {
+            append(file, buf, QUOTE_RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Recorded quotes of the symbol in write order.
+     */
+    public List<Quote> loadQuotes(String symbol) {
+        List<Quote> quotes = new ArrayList<Quote>();
+        if (!enabled) return quotes;
+        Path file = quoteFile(symbol);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            int records = records(ch, QUOTE_RECORD_BYTES, file);
+            if (records == 0) return quotes;
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, (long) records * QUOTE_RECORD_BYTES);
+            for (int r = 0; r < records; r++) {
+                Quote q = new Quote();
+                q.symbol = symbol;
+                q.asOf = Instant.ofEpochMilli(map.getLong());
+                q.price = map.getDouble();
+                q.changePercent = map.getDouble();
+                q.previousClose = map.getDouble();
+                q.open = map.getDouble();
+                q.dayLow = map.getDouble();
+                q.dayHigh = map.getDouble();
+                q.volume = map.getLong();
+                q.averageVolume = map.getLong();
+                q.marketCap = map.getLong();
+                quotes.add(q);
+            }
+        } catch (NoSuchFileException e) {
+            return quotes;
+        } catch (IOException e) {
+            failed("read quotes", file, e);
+        }
+        return quotes;
+    }
+
+    // ---- journal ----
+
+    private synchronized void appendJournal(byte type, Object value) {
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            if (journal == null || !today.equals(journalDay)) {
+                String name = today + JOURNAL_SUFFIX;
+                if (journal != null) {
+                    journal.close();
+                    // everything so far is in the closed day; restore can start at the new one
+                    writeCheckpoint(new JournalPosition(name, 0L), new ArrayList<AnalysisResult>(journaled.values()),
+                            lastGreedIndex);
+                }
+                journal = null;
+                journal = FileChannel.open(journalDir.resolve(name),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                Long end = restoredEnds.remove(name);
+                // a partial record left by a crash would swallow the records written after it
+                if (end != null && journal.size() > end) journal.truncate(end);
+                journalDay = today;
+            }
+            if (value instanceof AnalysisResult) {
+                AnalysisResult ar = (AnalysisResult) value;
+                journaled.put(AnalysisStore.normalize(ar.symbol), ar);
+            }
+            byte[] json = mapper.writeValueAsBytes(value);
+            ByteBuffer buf = ByteBuffer.allocate(5 + json.length);
+            buf.put(type).putInt(json.length).put(json);
+            buf.flip();
+            while (buf.hasRemaining()) journal.write(buf);
+        } catch (IOException e) {
+            failed("append journal", journalDir, e);
+        }
+    }
+
+    /**
+     * Writes the last analysis per symbol and the greed index to the checkpoint, so restore
+     * replays only the journal written after it. Skipped when nothing was journaled since the last.
+     */
+    @Scheduled(fixedDelayString = "PT${monitor.storage.checkpoint.minutes:10}M",
+            initialDelayString = "PT${monitor.storage.checkpoint.minutes:10}M")
+    public void checkpoint() {
+        if (!enabled) return;
+        JournalPosition at;
+        List<AnalysisResult> analyses;
+        GreedIndex greedIndex;
+        synchronized (this) {
+            if (journal == null) return;
+            try {
+                at = new JournalPosition(journalDay + JOURNAL_SUFFIX, journal.size());
+            } catch (IOException e) {
+                failed("checkpoint", journalDir, e);
+                return;
+            }
+            if (at.equals(checkpointed)) return;
+            analyses = new ArrayList<AnalysisResult>(journaled.values());
+            greedIndex = lastGreedIndex;
+        }
+        writeCheckpoint(at, analyses, greedIndex);
+    }
+
+    private void writeCheckpoint(JournalPosition at, List<AnalysisResult> analyses, GreedIndex greedIndex) {
+        synchronized (checkpointLock) {
+            Path file = journalDir.resolve(CHECKPOINT_FILE);
+            Path tmp = journalDir.resolve(CHECKPOINT_FILE + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+                DataOutputStream data = new DataOutputStream(out);
+                writeRecord(data, CHECKPOINT, at);
+                if (greedIndex != null) writeRecord(data, GREED, greedIndex);
+                for (AnalysisResult ar : analyses) writeRecord(data, ANALYSIS, ar);
+                data.flush();
+            } catch (IOException e) {
+                failed("checkpoint", tmp, e);
+                return;
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                checkpointed = at;
+            } catch (IOException e) {
+                failed("checkpoint", file, e);
+            }
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, byte type, Object value) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(value);
+        out.writeByte(type);
+        out.writeInt(json.length);
+        out.write(json);
+    }
+
+    /**
+     * Restores the last analysis per symbol and the last greed index: the checkpoint, then the
+     * journal from the position it was taken at. Without a checkpoint the two newest day journals
+     * are replayed, so a restart just after midnight UTC still finds yesterday's symbols. A record
+     * that does not parse is skipped; a torn record ends that file's replay.
+     */
+    private void restore() throws IOException {
+        List<String> days = new ArrayList<String>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(journalDir, "*" + JOURNAL_SUFFIX)) {
+            for (Path p : ds) days.add(p.getFileName().toString());
+        }
+        Collections.sort(days);
+
+        Replay replay = new Replay();
+        Path checkpoint = journalDir.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) replay.read(checkpoint, 0L);
+        JournalPosition from = replay.checkpointOf;
+        if (from == null && days.size() > 2) days = days.subList(days.size() - 2, days.size());
+        for (String day : days) {
+            if (from != null && day.compareTo(from.journal) < 0) continue;
+            long offset = from != null && day.equals(from.journal) ? from.offset : 0L;
+            try {
+                restoredEnds.put(day, replay.read(journalDir.resolve(day), offset));
+            } catch (NoSuchFileException ignored) {
+                // purged meanwhile
+            }
+        }
+        if (replay.skipped > 0) {
+            errors.increment(replay.skipped);
+            log.warn("Skipped {} unreadable journal records on restore; first: {}", replay.skipped,
+                    replay.firstError.toString());
+        }
+        synchronized (this) {
+            journaled.putAll(replay.analyses);
+            checkpointed = from;
+        }
+        lastGreedIndex = replay.greedIndex;
+        analysisStore.restore(replay.analyses.values(), lastGreedIndex);
+    }
+
+    /**
+     * Journal records read so far on restore. Files are streamed, not mapped, so their size is
+     * not limited.
+     */
+    private final class Replay {
+        final Map<String, AnalysisResult> analyses = new LinkedHashMap<String, AnalysisResult>();
+        GreedIndex greedIndex;
+        JournalPosition checkpointOf;
+        int skipped;
+        IOException firstError;
+
+        /**
+         * Applies the whole records from {@code offset} on and returns where they end.
+         */
+        long read(Path file, long offset) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = ch.size();
+                long position = offset;
+                ch.position(offset);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+                while (size - position >= 5) {
+                    byte type = in.readByte();
+                    int length = in.readInt();
+                    if (length < 0 || length > size - position - 5) break;
+                    byte[] json = new byte[length];
+                    in.readFully(json);
+                    position += 5 + length;
+                    apply(type, json);
+                }
+                if (position < size) {
+                    log.warn("{} ends in a partial record at {}, probably from an interrupted write", file, position);
+                }
+                return position;
+            }
+        }
+
+        private void apply(byte type, byte[] json) {
+            try {
+                if (type == ANALYSIS) {
+                    AnalysisResult ar = mapper.readValue(json, AnalysisResult.class);
+                    analyses.put(AnalysisStore.normalize(ar.symbol), ar);
+                } else if (type == GREED) {
+                    greedIndex = mapper.readValue(json, GreedIndex.class);
+                } else if (type == CHECKPOINT) {
+                    checkpointOf = mapper.readValue(json, JournalPosition.class);
+                }
+            } catch (IOException e) {
+                skipped++;
+                if (firstError == null) firstError = e;
+            }
+        }
+    }
+
+    /**
+     * A place in the day journals: file name and byte offset.
+     */
+    public static final class JournalPosition {
+        public String journal;
+        public long offset;
+
+        public JournalPosition() {
+        }
+
+        JournalPosition(String journal, long offset) {
+            this.journal = journal;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof JournalPosition)) return false;
+            JournalPosition p = (JournalPosition) o;
+            return offset == p.offset && Objects.equals(journal, p.journal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(journal, offset);
+        }
+    }
+
+    // ---- retention ----
+
+    /**
+     * Deletes day journals older than the retention period and cuts older bars and quotes out of
+     * their files. The journal being written is never touched.
+     */
+    @Scheduled(fixedDelay = 21_600_000L, initialDelay = 60_000L)
+    public void purgeExpired() {
+        if (!enabled || retention == null) return;
+        Instant cutoff = Instant.now().minus(retention);
+        LocalDate cutoffDay = cutoff.atZone(ZoneOffset.UTC).toLocalDate();
+        int journals = 0;
+        int files = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(journalDir, "*" + JOURNAL_SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    LocalDate day = LocalDate.parse(name.substring(0, name.length() - JOURNAL_SUFFIX.length()));
+                    if (day.isBefore(cutoffDay) && Files.deleteIfExists(p)) journals++;
+                } catch (DateTimeParseException ignored) {
+                    // not one of ours
+                }
+            }
+        } catch (IOException e) {
+            failed("purge journals", journalDir, e);
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(barsDir, "*.bin")) {
+            for (Path p : ds) {
+                if (purgeBars(p, cutoff.getEpochSecond())) files++;
+            }
+        } catch (IOException e) {
+            failed("purge bars", barsDir, e);
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(quotesDir, "*.bin")) {
+            for (Path p : ds) {
+                if (purgeQuotes(p, cutoff.toEpochMilli())) files++;
+            }
+        } catch (IOException e) {
+            failed("purge quotes", quotesDir, e);
+        }
+        if (journals > 0 || files > 0) {
+            log.info("Removed {} journals and trimmed {} bar and quote files older than {}", journals, files, cutoffDay);
+        }
+    }
+
+    private boolean purgeBars(Path file, long cutoffSeconds) {
+        synchronized (lockFor(file)) {
+            try {
+                if (firstLong(file) >= cutoffSeconds) return false;
+                BarSeries bars = readFile(file);
+                bars.dropHead(bars.indexAtOrAfter(cutoffSeconds));
+                rewriteBars(file, bars, "purge bars");
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                failed("purge bars", file, e);
+                return false;
+            }
+        }
+    }
+
+    // quotes are in write order; every record from the first recent one on is kept
+    private boolean purgeQuotes(Path file, long cutoffMillis) {
+        synchronized (lockFor(file)) {
+            try {
+                ByteBuffer rest;
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    int records = records(ch, QUOTE_RECORD_BYTES, file);
+                    int keepFrom = 0;
+                    ByteBuffer time = ByteBuffer.allocate(8);
+                    while (keepFrom < records) {
+                        time.clear();
+                        ch.read(time, (long) keepFrom * QUOTE_RECORD_BYTES);
+                        time.flip();
+                        if (time.getLong() >= cutoffMillis) break;
+                        keepFrom++;
+                    }
+                    if (keepFrom == 0) return false;
+                    rest = ByteBuffer.allocate((records - keepFrom) * QUOTE_RECORD_BYTES);
+                    long position = (long) keepFrom * QUOTE_RECORD_BYTES;
+                    while (rest.hasRemaining() && ch.read(rest, position + rest.position()) > 0) {
+                        // keep reading
+                    }
+                    rest.flip();
+                }
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.deleteIfExists(tmp);
+                if (!rest.hasRemaining()) {
+                    Files.delete(file);
+                    return true;
+                }
+                write(tmp, rest, QUOTE_RECORD_BYTES);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                failed("purge quotes", file, e);
+                return false;
+            }
+        }
+    }
+
+    private static long firstLong(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < 8) return Long.MIN_VALUE;
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            while (buf.hasRemaining() && ch.read(buf) > 0) {
+                // keep reading
+            }
+            buf.flip();
+            return buf.getLong();
+        }
+    }
+
+    // ---- files ----
+
+    private Path barFile(String symbol) {
+        return barsDir.resolve(fileName(symbol) + ".bin");
+    }
+
+    private Path quoteFile(String symbol) {
+        return quotesDir.resolve(fileName(symbol) + ".bin");
+    }
+
+    private Object lockFor(Path file) {
+        return fileLocks[(file.hashCode() & 0x7fffffff) % FILE_LOCKS];
+    }
+
+    // symbols such as BRK-B or ^VIX stay readable; anything path-like is replaced
+    private static String fileName(String symbol) {
+        return AnalysisStore.normalize(symbol).replaceAll("[^A-Z0-9.^=-]", "_");
+    }
+
+    private static ByteBuffer barRecords(BarSeries bars, int from) {
+        ByteBuffer buf = ByteBuffer.allocate((bars.size() - from) * BAR_RECORD_BYTES);
+        for (int i = from; i < bars.size(); i++) {
+            buf.putLong(bars.time(i));
+            buf.putDouble(bars.open(i));
+            buf.putDouble(bars.high(i));
+            buf.putDouble(bars.low(i));
+            buf.putDouble(bars.close(i));
+            buf.putLong(bars.volume(i));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private void append(Path file, ByteBuffer buf, int recordBytes) {
+        try {
+            write(file, buf, recordBytes);
+        } catch (IOException e) {
+            failed("append", file, e);
+        }
+    }
+
+    /**
+     * Appends whole records, first cutting off a partial record left by an interrupted write.
+     */
+    private static void write(Path file, ByteBuffer buf, int recordBytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long aligned = size - size % recordBytes;
+            if (aligned != size) ch.truncate(aligned);
+            ch.position(aligned);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    /**
+     * Counts every failure; logs the first of each kind and then at most once a minute, so a full
+     * disk does not flood the log with one line per record.
+     */
+    private void failed(String action, Path path, IOException e) {
+        errors.increment();
+        long now = System.currentTimeMillis();
+        Long last = lastWarned.get(action);
+        if (last != null && now - last < WARN_INTERVAL_MILLIS) return;
+        lastWarned.put(action, now);
+        log.warn("Storage {} failed for {}: {}", action, path, e.toString());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (journal == null) return;
+        // a clean restart then replays nothing but the checkpoint
+        checkpoint();
+        try {
+            journal.force(false);
+            journal.close();
+        } catch (IOException e) {
+            failed("close journal", journalDir, e);
+        }
+        journal = null;
+    }
+}
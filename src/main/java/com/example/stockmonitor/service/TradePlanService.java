@@ -0,0 +1,37 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.TradePlan;
+import org.springframework.stereotype.Service;
+
+/**
+ * Volatility-based position sizing, shared by the trade-plan endpoint and the backtest.
+ */
+@Service
+public class TradePlanService {
+
+    static final double RISK_PER_TRADE = 0.01;
+    static final double STOP_ATR_MULTIPLE = 1.5;
+    static final double TARGET_ATR_MULTIPLE = 2.5;
+
+    /**
+     * Sizes a position risking 1% of capital per ATR of adverse move, with SL 1.5x ATR and TP 2.5x ATR.
+     * Falls back to an ATR of 2% of price when none is known.
+     */
+    public TradePlan plan(String symbol, double capital, double price, double atr) {
+        TradePlan tp = new TradePlan();
+        tp.symbol = symbol;
+        tp.capital = capital;
+        if (Double.isNaN(atr) || atr <= 0) atr = 0.02 * price; // fallback 2%
+        double riskPerShare = Math.max(atr, 0.01 * price);
+        double riskPerTrade = RISK_PER_TRADE * capital; // 1% risk per trade
+        int qty = (int)Math.floor(riskPerTrade / riskPerShare);
+        if (qty < 1) qty = 1;
+        tp.quantity = qty;
+        tp.suggestedEntry = price;
+        tp.stopLoss = price - STOP_ATR_MULTIPLE * atr;
+        tp.takeProfit = price + TARGET_ATR_MULTIPLE * atr;
+        tp.method = "VolatilityTarget(ATR)";
+        tp.notes = "Risk 1% of capital; SL 1.5x ATR, TP 2.5x ATR";
+        return tp;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.stockmonitor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side traffic control for upstream calls, kept per endpoint:
+ * <ul>
+ *   <li>a token bucket caps the request rate</li>
+ *   <li>an AIMD concurrency limit grows by about one per round of successes and halves on
+ *   429, 5xx or I/O failures (at most once per cooldown)</li>
+ *   <li>retryable failures are retried with full-jitter exponential backoff, honouring Retry-After</li>
+ *   <li>a circuit breaker fails fast after consecutive failures and lets one probe through once
+ *   the open period has passed</li>
+ * </ul>
+ * Meters: {@code monitor.upstream.throttle} (time waiting for a token and a concurrency slot),
+ * {@code monitor.upstream.retries}, {@code monitor.upstream.rejected} (circuit open),
+ * {@code monitor.upstream.concurrency.limit} and {@code monitor.upstream.circuit.state}
+ * (0 closed, 1 half-open, 2 open), all tagged by endpoint.
+ */
+@Component
+public class TrafficController {
+
+    public interface Exchange<T> {
+        T run() throws IOException;
+    }
+
+    private final double requestsPerSecond;
+    private final double burst;
+    private final int initialConcurrency;
+    private final int maxConcurrency;
+    private final int maxRetries;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final int breakerFailures;
+    private final long breakerOpenNanos;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+    private volatile double rateShare = 1.0;
+
+    public TrafficController(@Value("${monitor.upstream.requests.per.second:5}") double requestsPerSecond,
+                             @Value("${monitor.upstream.burst:5}") double burst,
+                             @Value("${monitor.upstream.concurrency.initial:4}") int initialConcurrency,
+                             @Value("${monitor.upstream.concurrency.max:16}") int maxConcurrency,
+                             @Value("${monitor.upstream.retries:3}") int maxRetries,
+                             @Value("${monitor.upstream.backoff.base.millis:250}") long backoffBaseMillis,
+                             @Value("${monitor.upstream.backoff.max.millis:8000}") long backoffMaxMillis,
+                             @Value("${monitor.upstream.breaker.failures:5}") int breakerFailures,
+                             @Value("${monitor.upstream.breaker.open.seconds:30}") long breakerOpenSeconds,
+                             MeterRegistry meterRegistry) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.initialConcurrency = Math.max(1, Math.min(initialConcurrency, this.maxConcurrency));
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoffBaseMillis = Math.max(1, backoffBaseMillis);
+        this.backoffMaxMillis = Math.max(this.backoffBaseMillis, backoffMaxMillis);
+        this.breakerFailures = Math.max(1, breakerFailures);
+        this.breakerOpenNanos = TimeUnit.SECONDS.toNanos(breakerOpenSeconds);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs the exchange under the endpoint's limits, retrying 429, 5xx and I/O failures. Other
+     * {@link UpstreamStatusException}s and bodies that fail to parse are returned to the caller at
+     * once: upstream answered, so they neither lower the concurrency limit nor trip the breaker.
+     */
+    public <T> T call(String endpoint, Exchange<T> exchange) throws IOException {
+        Lane lane = lanes.computeIfAbsent(endpoint, this::newLane);
+        for (int attempt = 0; ; attempt++) {
+            if (!lane.breaker.allow()) {
+                meterRegistry.counter("monitor.upstream.rejected", "endpoint", endpoint).increment();
+                throw new IOException("Circuit open for " + endpoint);
+            }
+            long waitStart = System.nanoTime();
+            try {
+                lane.bucket.acquire();
+                lane.concurrency.acquire();
+            } catch (InterruptedException e) {
+                lane.breaker.release();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + endpoint);
+            }
+            meterRegistry.timer("monitor.upstream.throttle", "endpoint", endpoint)
+                    .record(System.nanoTime() - waitStart, TimeUnit.NANOSECONDS);
+
+            IOException failure;
+            long retryAfterMillis = 0;
+            try {
+                T result = exchange.run();
+                lane.concurrency.onSuccess();
+                lane.breaker.onSuccess();
+                return result;
+            } catch (UpstreamStatusException e) {
+                if (!e.isRetryable()) {
+                    // upstream is healthy, the request itself was refused
+                    lane.breaker.onSuccess();
+                    throw e;
+                }
+                failure = e;
+                retryAfterMillis = e.getRetryAfterMillis();
+            } catch (JsonProcessingException e) {
+                // a complete response we could not read; asking again gets the same body
+                lane.breaker.onSuccess();
+                throw e;
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException | Error e) {
+                // e.g. a parser bug on an unexpected body: not retried, but it must settle the
+                // breaker, or a probe failing this way would leave it half-open for good
+                lane.breaker.onFailure();
+                throw e;
+            } finally {
+                lane.concurrency.release();
+            }
+            lane.concurrency.onThrottle();
+            lane.breaker.onFailure();
+            if (attempt >= maxRetries || Thread.currentThread().isInterrupted()) throw failure;
+            meterRegistry.counter("monitor.upstream.retries", "endpoint", endpoint).increment();
+            try {
+                TimeUnit.MILLISECONDS.sleep(Math.max(retryAfterMillis, backoffMillis(attempt)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw failure;
+            }
+        }
+    }
+
+    // full jitter: uniform in [0, min(max, base * 2^attempt)]
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Scales every endpoint's request rate, for instances sharing one egress address.
+     */
+    public void setRateShare(double share) {
+        rateShare = share > 0 ? Math.min(1.0, share) : 1.0;
+        for (Lane lane : lanes.values()) lane.bucket.setRate(requestsPerSecond * rateShare);
+    }
+
+    /**
+     * Configured rate of each endpoint lane, before the shard share.
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public double getRateShare() {
+        return rateShare;
+    }
+
+    public int getConcurrencyLimit(String endpoint) {
+        Lane lane = lanes.get(endpoint);
+        return lane == null ? initialConcurrency : lane.concurrency.limit();
+    }
+
+    private Lane newLane(String endpoint) {
+        Lane lane = new Lane(new RateLimiter(requestsPerSecond * rateShare, burst),
+                new AdaptiveLimit(initialConcurrency, maxConcurrency),
+                new CircuitBreaker(breakerFailures, breakerOpenNanos));
+        Gauge.builder("monitor.upstream.concurrency.limit", lane.concurrency, AdaptiveLimit::limit)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("monitor.upstream.circuit.state", lane.breaker, CircuitBreaker::stateCode)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return lane;
+    }
+
+    private static final class Lane {
+        final RateLimiter bucket;
+        final AdaptiveLimit concurrency;
+        final CircuitBreaker breaker;
+
+        Lane(RateLimiter bucket, AdaptiveLimit concurrency, CircuitBreaker breaker) {
+            this.bucket = bucket;
+            this.concurrency = concurrency;
+            this.breaker = breaker;
+        }
+    }
+
+    /**
+     * Additive-increase / multiplicative-decrease limit on requests in flight.
+     */
+    static final class AdaptiveLimit {
+
+        private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final int max;
+        private double limit;
+        private int inFlight;
+        private long lastDecrease = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+
+        AdaptiveLimit(int initial, int max) {
+            this.max = max;
+            this.limit = initial;
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (inFlight >= (int) limit) wait();
+            inFlight++;
+        }
+
+        synchronized void release() {
+            inFlight--;
+            notifyAll();
+        }
+
+        synchronized void onSuccess() {
+            limit = Math.min(max, limit + 1.0 / limit);
+            notifyAll();
+        }
+
+        // one failed round usually fails several calls at once; halve once for all of them
+        synchronized void onThrottle() {
+            long now = System.nanoTime();
+            if (now - lastDecrease < DECREASE_COOLDOWN_NANOS) return;
+            lastDecrease = now;
+            limit = Math.max(1.0, limit / 2.0);
+        }
+
+        synchronized int limit() {
+            return (int) limit;
+        }
+    }
+
+    /**
+     * Opens after consecutive failures; once the open period ends, a single probe decides
+     * whether to close again or reopen.
+     */
+    static final class CircuitBreaker {
+
+        private static final int CLOSED = 0;
+        private static final int HALF_OPEN = 1;
+        private static final int OPEN = 2;
+
+        private final int threshold;
+        private final long openNanos;
+        private int state = CLOSED;
+        private int failures;
+        private long openUntil;
+
+        CircuitBreaker(int threshold, long openNanos) {
+            this.threshold = threshold;
+            this.openNanos = openNanos;
+        }
+
+        synchronized boolean allow() {
+            if (state == CLOSED) return true;
+            if (state == HALF_OPEN) return false; // probe in flight
+            if (System.nanoTime() - openUntil < 0) return false;
+            state = HALF_OPEN;
+            return true;
+        }
+
+        /**
+         * Gives up a probe slot that was granted but never used.
+         */
+        synchronized void release() {
+            if (state == HALF_OPEN) {
+                state = OPEN;
+                openUntil = System.nanoTime();
+            }
+        }
+
+        synchronized void onSuccess() {
+            failures = 0;
+            state = CLOSED;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            if (state == HALF_OPEN || failures >= threshold) {
+                state = OPEN;
+                openUntil = System.nanoTime() + openNanos;
+            }
+        }
+
+        synchronized int stateCode() {
+            return state;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.stockmonitor.service;
+
+import java.io.IOException;
+
+/**
+ * Non-2xx upstream response. 429 and 5xx are worth retrying; other codes are final answers.
+ */
+public class UpstreamStatusException extends IOException {
+
+    private final int code;
+    private final long retryAfterMillis;
+
+    public UpstreamStatusException(int code, String message, long retryAfterMillis) {
+        super("Unexpected code " + code + " " + message);
+        this.code = code;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Delay requested by a Retry-After header, or 0 when there was none.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isRetryable() {
+        return code == 429 || code >= 500;
+    }
+}
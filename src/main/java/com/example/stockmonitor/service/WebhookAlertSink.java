@@ -0,0 +1,56 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.Alert;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts each alert as JSON to {@code monitor.alerts.webhook.url}; only created when that is set to
+ * something other than blank, so an empty {@code url=} line leaves no sink or sender thread behind.
+ * No retries: a failed post is counted by {@link AlertService} and the alert is dropped.
+ */
+@Component
+// @ConditionalOnProperty matches an empty value too
+@ConditionalOnExpression("!'${monitor.alerts.webhook.url:}'.trim().isEmpty()")
+public class WebhookAlertSink implements AlertSink {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final String url;
+    private final ObjectMapper mapper;
+    private final OkHttpClient httpClient = new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .callTimeout(10, TimeUnit.SECONDS)
+            .build();
+
+    public WebhookAlertSink(@Value("${monitor.alerts.webhook.url}") String url, ObjectMapper mapper) {
+        this.url = url.trim();
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String name() {
+        return "webhook";
+    }
+
+    @Override
+    public void deliver(Alert alert) throws IOException {
+        Request req = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(JSON, mapper.writeValueAsBytes(alert)))
+                .build();
+        try (Response resp = httpClient.newCall(req).execute()) {
+            if (!resp.isSuccessful()) throw new IOException("Webhook returned HTTP " + resp.code());
+        }
+    }
+}
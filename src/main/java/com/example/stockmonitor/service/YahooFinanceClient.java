@@ -1,36 +1,82 @@
 package com.example.stockmonitor.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.example.stockmonitor.config.CacheConfig;
+import com.example.stockmonitor.model.BarSeries;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Yahoo Finance HTTP client. Calls go through {@link TrafficController} per endpoint. Every
+ * attempt records {@code monitor.upstream.request} (latency histogram by endpoint and HTTP
+ * status, or IO_ERROR) and {@code monitor.upstream.bytes} (decoded body bytes by endpoint).
+ */
 @Component
-public class YahooFinanceClient {
+@ConditionalOnProperty(name = "monitor.provider", havingValue = "yahoo", matchIfMissing = true)
+public class YahooFinanceClient implements MarketDataProvider {
 
+    static final String SCREENER = "screener";
+    static final String QUOTE_SUMMARY = "quoteSummary";
+    static final String CHART = "chart";
+
+    public static final String QUOTE_MODULES = "price,summaryDetail";
+    public static final String PROFILE_MODULES = "assetProfile,defaultKeyStatistics,financialData";
+
+    private final String baseUrl;
     private final OkHttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final YahooResponseParser parser;
+    private final boolean streaming;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final TrafficController traffic;
+    private final MeterRegistry meterRegistry;
 
-    public YahooFinanceClient() {
+    private interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    public YahooFinanceClient(@Value("${monitor.yahoo.parser:streaming}") String parserMode,
+                              @Value("${monitor.yahoo.base.url:https://query1.finance.yahoo.com}") String baseUrl,
+                              @Value("${monitor.upstream.connect.timeout.millis:5000}") long connectTimeoutMillis,
+                              @Value("${monitor.upstream.read.timeout.millis:10000}") long readTimeoutMillis,
+                              @Value("${monitor.upstream.call.timeout.millis:30000}") long callTimeoutMillis,
+                              @Value("${monitor.upstream.pool.max.idle:16}") int maxIdleConnections,
+                              TrafficController traffic, MeterRegistry meterRegistry) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
         this.httpClient = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, 5, TimeUnit.MINUTES))
                 .retryOnConnectionFailure(true)
                 .build();
-        this.objectMapper = new ObjectMapper();
+        this.parser = new YahooResponseParser(new ObjectMapper());
+        this.streaming = !"tree".equalsIgnoreCase(parserMode);
+        this.traffic = traffic;
+        this.meterRegistry = meterRegistry;
     }
 
+    @Override
     public List<Map<String, Object>> getTopLosers(int count) throws IOException {
-        HttpUrl url = HttpUrl.parse("https://query1.finance.yahoo.com/v1/finance/screener/predefined/saved")
+        HttpUrl url = HttpUrl.parse(baseUrl + "/v1/finance/screener/predefined/saved")
                 .newBuilder()
                 .addQueryParameter("formatted", "false")
                 .addQueryParameter("scrIds", "day_losers")
@@ -40,134 +86,141 @@ public class YahooFinanceClient {
                 .url(url)
                 .header("User-Agent", "Mozilla/5.0")
                 .build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected code " + response);
-            }
-            JsonNode root = objectMapper.readTree(response.body().byteStream());
-            List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
-            JsonNode quotes = root.path("finance").path("result").get(0).path("quotes");
-            if (quotes.isArray()) {
-                for (JsonNode q : quotes) {
-                    Map<String, Object> map = new HashMap<String, Object>();
-                    map.put("symbol", q.path("symbol").asText());
-                    map.put("shortName", q.path("shortName").asText(null));
-                    map.put("regularMarketChangePercent", q.path("regularMarketChangePercent").asDouble());
-                    map.put("regularMarketVolume", q.path("regularMarketVolume").asLong());
-                    items.add(map);
-                }
-            }
-            return items;
-        }
+        return exchange(request, SCREENER, body -> streaming ? parser.parseTopLosers(body) : parser.parseTopLosersTree(body));
     }
 
-    public Map<String, Object> getQuoteSummary(String symbol) throws IOException {
-        HttpUrl url = HttpUrl.parse("https://query1.finance.yahoo.com/v10/finance/quoteSummary/" + symbol)
+    /**
+     * Fast-moving quoteSummary modules (price, day range, volume), cached for seconds.
+     */
+    @Override
+    @Cacheable(cacheNames = CacheConfig.QUOTES, sync = true)
+    public Map<String, Object> getQuoteModules(String symbol) throws IOException {
+        return Collections.unmodifiableMap(getQuoteSummary(symbol, QUOTE_MODULES));
+    }
+
+    /**
+     * Slow-moving quoteSummary modules (asset profile and fundamentals), cached for hours.
+     */
+    @Override
+    @Cacheable(cacheNames = CacheConfig.PROFILES, sync = true)
+    public Map<String, Object> getProfileModules(String symbol) throws IOException {
+        return Collections.unmodifiableMap(getQuoteSummary(symbol, PROFILE_MODULES));
+    }
+
+    public Map<String, Object> getQuoteSummary(String symbol, String modules) throws IOException {
+        HttpUrl url = HttpUrl.parse(baseUrl + "/v10/finance/quoteSummary/" + symbol)
                 .newBuilder()
-                .addQueryParameter("modules", "price,assetProfile,defaultKeyStatistics,financialData,summaryDetail")
+                .addQueryParameter("modules", modules)
                 .build();
         Request request = new Request.Builder()
                 .url(url)
                 .header("User-Agent", "Mozilla/5.0")
                 .build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected code " + response);
-            }
-            JsonNode root = objectMapper.readTree(response.body().byteStream());
-            JsonNode result = root.path("quoteSummary").path("result").get(0);
-            Map<String, Object> map = new HashMap<String, Object>();
-            if (result != null) {
-                JsonNode price = result.path("price");
-                JsonNode assetProfile = result.path("assetProfile");
-                JsonNode financialData = result.path("financialData");
-                JsonNode summaryDetail = result.path("summaryDetail");
-                JsonNode defaultKeyStatistics = result.path("defaultKeyStatistics");
-
-                map.put("shortName", text(price, "shortName"));
-                map.put("longName", text(price, "longName"));
-                map.put("exchange", text(price, "exchangeName"));
-                map.put("marketCap", number(price, "marketCap"));
-                map.put("previousClose", number(summaryDetail, "previousClose"));
-                map.put("open", number(summaryDetail, "open"));
-                map.put("dayLow", number(summaryDetail, "dayLow"));
-                map.put("dayHigh", number(summaryDetail, "dayHigh"));
-                map.put("regularMarketPrice", number(price, "regularMarketPrice"));
-                map.put("regularMarketChangePercent", number(price, "regularMarketChangePercent"));
-                map.put("regularMarketVolume", number(price, "regularMarketVolume"));
-                map.put("averageDailyVolume3Month", number(summaryDetail, "averageVolume"));
-
-                map.put("sector", text(assetProfile, "sector"));
-                map.put("industry", text(assetProfile, "industry"));
-
-                map.put("peRatio", number(summaryDetail, "trailingPE"));
-                map.put("pbRatio", number(defaultKeyStatistics, "priceToBook"));
-                map.put("profitMargins", number(summaryDetail, "profitMargins"));
-                map.put("debtToEquity", number(financialData, "debtToEquity"));
-                map.put("revenueGrowth", number(financialData, "revenueGrowth"));
-                map.put("freeCashflow", number(financialData, "freeCashflow"));
-                map.put("operatingMargins", number(financialData, "operatingMargins"));
-                map.put("returnOnEquity", number(financialData, "returnOnEquity"));
-            }
-            return map;
-        }
+        return exchange(request, QUOTE_SUMMARY,
+                body -> streaming ? parser.parseQuoteSummary(body) : parser.parseQuoteSummaryTree(body));
     }
 
-    public List<Map<String, Object>> getChart(String symbol, String range, String interval) throws IOException {
-        HttpUrl url = HttpUrl.parse("https://query1.finance.yahoo.com/v8/finance/chart/" + symbol)
+    @Override
+    public BarSeries getChart(String symbol, String range, String interval) throws IOException {
+        HttpUrl url = HttpUrl.parse(baseUrl + "/v8/finance/chart/" + symbol)
                 .newBuilder()
                 .addQueryParameter("range", range)
                 .addQueryParameter("interval", interval)
                 .build();
+        return fetchChart(url);
+    }
+
+    /**
+     * Fetches bars between two epoch-second timestamps, used to pull only the tail of a series.
+     * Cached for one bar interval per symbol and start time; the end time is not part of the key.
+     */
+    @Override
+    @Cacheable(cacheNames = CacheConfig.CHARTS, key = "{#symbol, #period1, #interval}", sync = true)
+    public BarSeries getChart(String symbol, long period1, long period2, String interval) throws IOException {
+        HttpUrl url = HttpUrl.parse(baseUrl + "/v8/finance/chart/" + symbol)
+                .newBuilder()
+                .addQueryParameter("period1", String.valueOf(period1))
+                .addQueryParameter("period2", String.valueOf(period2))
+                .addQueryParameter("interval", interval)
+                .build();
+        return fetchChart(url);
+    }
+
+    private BarSeries fetchChart(HttpUrl url) throws IOException {
         Request request = new Request.Builder()
                 .url(url)
                 .header("User-Agent", "Mozilla/5.0")
                 .build();
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Unexpected code " + response);
-            }
-            JsonNode root = objectMapper.readTree(response.body().byteStream());
-            JsonNode result = root.path("chart").path("result").get(0);
-            List<Map<String, Object>> bars = new ArrayList<Map<String, Object>>();
-            if (result != null) {
-                JsonNode timestamps = result.path("timestamp");
-                JsonNode indicators = result.path("indicators").path("quote").get(0);
-                JsonNode opens = indicators.path("open");
-                JsonNode highs = indicators.path("high");
-                JsonNode lows = indicators.path("low");
-                JsonNode closes = indicators.path("close");
-                JsonNode volumes = indicators.path("volume");
-                int n = timestamps.size();
-                for (int i = 0; i < n; i++) {
-                    Map<String, Object> b = new HashMap<String, Object>();
-                    long ts = timestamps.get(i).asLong();
-                    b.put("time", Instant.ofEpochSecond(ts));
-                    b.put("open", opens.get(i).asDouble());
-                    b.put("high", highs.get(i).asDouble());
-                    b.put("low", lows.get(i).asDouble());
-                    b.put("close", closes.get(i).asDouble());
-                    b.put("volume", volumes.get(i).asLong());
-                    bars.add(b);
+        return exchange(request, CHART, body -> streaming ? parser.parseChart(body) : parser.parseChartTree(body));
+    }
+
+    /**
+     * Total number of HTTP requests sent upstream since startup.
+     */
+    @Override
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Sends the request and parses a successful body, with retries and limits applied by the
+     * traffic controller; a non-2xx response surfaces as {@link UpstreamStatusException}.
+     */
+    private <T> T exchange(Request request, String endpoint, BodyParser<T> bodyParser) throws IOException {
+        return traffic.call(endpoint, () -> {
+            try (Response response = execute(request, endpoint)) {
+                if (!response.isSuccessful()) {
+                    throw new UpstreamStatusException(response.code(), response.message(), retryAfterMillis(response));
                 }
+                return bodyParser.parse(counted(response, endpoint));
             }
-            return bars;
+        });
+    }
+
+    private static long retryAfterMillis(Response response) {
+        String header = response.header("Retry-After");
+        if (header == null) return 0L;
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim()));
+        } catch (NumberFormatException e) {
+            return 0L; // HTTP-date form is not used by Yahoo
         }
     }
 
-    private String text(JsonNode node, String field) {
-        if (node == null) return null;
-        JsonNode v = node.path(field);
-        if (v == null || v.isMissingNode() || v.isNull()) return null;
-        if (v.has("fmt")) return v.path("fmt").asText(null);
-        return v.asText(null);
+    private Response execute(Request request, String endpoint) throws IOException {
+        long start = System.nanoTime();
+        requestCount.incrementAndGet();
+        String status = "IO_ERROR";
+        try {
+            Response response = httpClient.newCall(request).execute();
+            status = String.valueOf(response.code());
+            return response;
+        } finally {
+            Timer.builder("monitor.upstream.request")
+                    .tag("endpoint", endpoint)
+                    .tag("status", status)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
-    private Double number(JsonNode node, String field) {
-        if (node == null) return null;
-        JsonNode v = node.path(field);
-        if (v == null || v.isMissingNode() || v.isNull()) return null;
-        if (v.has("raw")) return v.path("raw").asDouble();
-        return v.asDouble();
+    private InputStream counted(Response response, String endpoint) {
+        Counter bytes = meterRegistry.counter("monitor.upstream.bytes", "endpoint", endpoint);
+        return new FilterInputStream(response.body().byteStream()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytes.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) bytes.increment(n);
+                return n;
+            }
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,379 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses Yahoo screener, quoteSummary and chart responses. The streaming methods walk
+ * {@link JsonParser} tokens and skip everything they do not need; the {@code *Tree} methods
+ * build a full {@link JsonNode} tree. Both produce the same results.
+ */
+public class YahooResponseParser {
+
+    private static final String[] QUOTE_SUMMARY_KEYS = {
+            "shortName", "longName", "exchange", "marketCap", "previousClose", "open", "dayLow", "dayHigh",
+            "regularMarketPrice", "regularMarketChangePercent", "regularMarketVolume", "averageDailyVolume3Month",
+            "sector", "industry", "peRatio", "pbRatio", "profitMargins", "debtToEquity", "revenueGrowth",
+            "freeCashflow", "operatingMargins", "returnOnEquity"
+    };
+
+    // module -> field -> output key; keys starting with '$' are text values
+    private static final Map<String, Map<String, String>> QUOTE_SUMMARY_FIELDS = new HashMap<String, Map<String, String>>();
+
+    static {
+        field("price", "shortName", "$shortName");
+        field("price", "longName", "$longName");
+        field("price", "exchangeName", "$exchange");
+        field("price", "marketCap", "marketCap");
+        field("price", "regularMarketPrice", "regularMarketPrice");
+        field("price", "regularMarketChangePercent", "regularMarketChangePercent");
+        field("price", "regularMarketVolume", "regularMarketVolume");
+        field("summaryDetail", "previousClose", "previousClose");
+        field("summaryDetail", "open", "open");
+        field("summaryDetail", "dayLow", "dayLow");
+        field("summaryDetail", "dayHigh", "dayHigh");
+        field("summaryDetail", "averageVolume", "averageDailyVolume3Month");
+        field("summaryDetail", "trailingPE", "peRatio");
+        field("summaryDetail", "profitMargins", "profitMargins");
+        field("assetProfile", "sector", "$sector");
+        field("assetProfile", "industry", "$industry");
+        field("defaultKeyStatistics", "priceToBook", "pbRatio");
+        field("financialData", "debtToEquity", "debtToEquity");
+        field("financialData", "revenueGrowth", "revenueGrowth");
+        field("financialData", "freeCashflow", "freeCashflow");
+        field("financialData", "operatingMargins", "operatingMargins");
+        field("financialData", "returnOnEquity", "returnOnEquity");
+    }
+
+    private static void field(String module, String field, String key) {
+        Map<String, String> fields = QUOTE_SUMMARY_FIELDS.get(module);
+        if (fields == null) {
+            fields = new HashMap<String, String>();
+            QUOTE_SUMMARY_FIELDS.put(module, fields);
+        }
+        fields.put(field, key);
+    }
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    public YahooResponseParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public List<Map<String, Object>> parseTopLosers(InputStream in) throws IOException {
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        try (JsonParser p = jsonFactory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return items;
+            if (!moveToField(p, "finance") || !moveToField(p, "result") || !moveToFirstElement(p)) return items;
+            if (!moveToField(p, "quotes") || p.currentToken() != JsonToken.START_ARRAY) return items;
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String symbol = "";
+                String shortName = null;
+                double changePercent = 0.0;
+                long volume = 0L;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.getCurrentName();
+                    JsonToken t = p.nextToken();
+                    if ("symbol".equals(name)) {
+                        symbol = t == JsonToken.VALUE_NULL ? "null" : scalarText(p, "");
+                    } else if ("shortName".equals(name)) {
+                        shortName = t == JsonToken.VALUE_NULL ? null : scalarText(p, null);
+                    } else if ("regularMarketChangePercent".equals(name)) {
+                        changePercent = readDouble(p);
+                    } else if ("regularMarketVolume".equals(name)) {
+                        volume = readLong(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                Map<String, Object> map = new HashMap<String, Object>();
+                map.put("symbol", symbol);
+                map.put("shortName", shortName);
+                map.put("regularMarketChangePercent", changePercent);
+                map.put("regularMarketVolume", volume);
+                items.add(map);
+            }
+        }
+        return items;
+    }
+
+    public List<Map<String, Object>> parseTopLosersTree(InputStream in) throws IOException {
+        JsonNode root = objectMapper.readTree(in);
+        List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        JsonNode quotes = root.path("finance").path("result").get(0).path("quotes");
+        if (quotes.isArray()) {
+            for (JsonNode q : quotes) {
+                Map<String, Object> map = new HashMap<String, Object>();
+                map.put("symbol", q.path("symbol").asText());
+                map.put("shortName", q.path("shortName").asText(null));
+                map.put("regularMarketChangePercent", q.path("regularMarketChangePercent").asDouble());
+                map.put("regularMarketVolume", q.path("regularMarketVolume").asLong());
+                items.add(map);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Reads only the wanted fields of the known modules; every other module is skipped unread.
+     * Wanted values are small scalars or {raw, fmt} objects, so they are read as tiny trees.
+     */
+    public Map<String, Object> parseQuoteSummary(InputStream in) throws IOException {
+        Map<String, Object> map = new HashMap<String, Object>();
+        try (JsonParser p = jsonFactory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return map;
+            if (!moveToField(p, "quoteSummary") || !moveToField(p, "result") || !moveToFirstElement(p)) return map;
+            if (p.currentToken() != JsonToken.START_OBJECT) return map;
+            for (String key : QUOTE_SUMMARY_KEYS) map.put(key, null);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                Map<String, String> fields = QUOTE_SUMMARY_FIELDS.get(p.getCurrentName());
+                if (p.nextToken() != JsonToken.START_OBJECT || fields == null) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String key = fields.get(p.getCurrentName());
+                    p.nextToken();
+                    if (key == null) {
+                        p.skipChildren();
+                    } else if (key.charAt(0) == '$') {
+                        map.put(key.substring(1), text(p.readValueAsTree()));
+                    } else {
+                        map.put(key, number(p.readValueAsTree()));
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    public Map<String, Object> parseQuoteSummaryTree(InputStream in) throws IOException {
+        JsonNode root = objectMapper.readTree(in);
+        JsonNode result = root.path("quoteSummary").path("result").get(0);
+        Map<String, Object> map = new HashMap<String, Object>();
+        if (result != null) {
+            for (String key : QUOTE_SUMMARY_KEYS) map.put(key, null);
+            for (Map.Entry<String, Map<String, String>> module : QUOTE_SUMMARY_FIELDS.entrySet()) {
+                JsonNode node = result.path(module.getKey());
+                for (Map.Entry<String, String> f : module.getValue().entrySet()) {
+                    String key = f.getValue();
+                    if (key.charAt(0) == '$') {
+                        map.put(key.substring(1), text(node.path(f.getKey())));
+                    } else {
+                        map.put(key, number(node.path(f.getKey())));
+                    }
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Reads the timestamp and OHLCV arrays straight into primitive columns.
+     */
+    public BarSeries parseChart(InputStream in) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return new BarSeries(0);
+            if (!moveToField(p, "chart") || !moveToField(p, "result") || !moveToFirstElement(p)) return new BarSeries(0);
+            if (p.currentToken() != JsonToken.START_OBJECT) return new BarSeries(0);
+            long[] times = new long[0];
+            double[] opens = null, highs = null, lows = null, closes = null;
+            long[] volumes = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                p.nextToken();
+                if ("timestamp".equals(name)) {
+                    times = readLongs(p, 0);
+                } else if ("indicators".equals(name) && p.currentToken() == JsonToken.START_OBJECT) {
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        boolean quote = "quote".equals(p.getCurrentName());
+                        if (p.nextToken() != JsonToken.START_ARRAY || !quote) {
+                            p.skipChildren();
+                            continue;
+                        }
+                        // only the first quote entry carries the OHLCV columns
+                        boolean first = true;
+                        while (p.nextToken() != JsonToken.END_ARRAY) {
+                            if (!first || p.currentToken() != JsonToken.START_OBJECT) {
+                                p.skipChildren();
+                                continue;
+                            }
+                            first = false;
+                            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                String column = p.getCurrentName();
+                                p.nextToken();
+                                if ("open".equals(column)) opens = readDoubles(p, times.length);
+                                else if ("high".equals(column)) highs = readDoubles(p, times.length);
+                                else if ("low".equals(column)) lows = readDoubles(p, times.length);
+                                else if ("close".equals(column)) closes = readDoubles(p, times.length);
+                                else if ("volume".equals(column)) volumes = readLongs(p, times.length);
+                                else p.skipChildren();
+                            }
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+            int n = times.length;
+            return BarSeries.wrap(times, fit(opens, n), fit(highs, n), fit(lows, n), fit(closes, n), fit(volumes, n), n);
+        }
+    }
+
+    public BarSeries parseChartTree(InputStream in) throws IOException {
+        JsonNode root = objectMapper.readTree(in);
+        JsonNode result = root.path("chart").path("result").get(0);
+        if (result == null || result.path("timestamp").size() == 0) {
+            return new BarSeries(0);
+        }
+        JsonNode timestamps = result.path("timestamp");
+        JsonNode indicators = result.path("indicators").path("quote").get(0);
+        JsonNode opens = indicators.path("open");
+        JsonNode highs = indicators.path("high");
+        JsonNode lows = indicators.path("low");
+        JsonNode closes = indicators.path("close");
+        JsonNode volumes = indicators.path("volume");
+        int n = timestamps.size();
+        BarSeries bars = new BarSeries(n);
+        for (int i = 0; i < n; i++) {
+            bars.add(timestamps.get(i).asLong(),
+                    opens.get(i).asDouble(),
+                    highs.get(i).asDouble(),
+                    lows.get(i).asDouble(),
+                    closes.get(i).asDouble(),
+                    volumes.get(i).asLong());
+        }
+        return bars;
+    }
+
+    /**
+     * From the start of an object, advances to the value of the named field, skipping earlier fields.
+     */
+    private static boolean moveToField(JsonParser p, String field) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) return false;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.getCurrentName();
+            p.nextToken();
+            if (field.equals(name)) return true;
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    private static boolean moveToFirstElement(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) return false;
+        JsonToken t = p.nextToken();
+        return t != null && t != JsonToken.END_ARRAY;
+    }
+
+    private static long[] readLongs(JsonParser p, int expected) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return new long[0];
+        }
+        long[] values = new long[Math.max(expected, 16)];
+        int n = 0;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (n == values.length) values = Arrays.copyOf(values, n + (n >> 1));
+            values[n++] = readLong(p);
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    private static double[] readDoubles(JsonParser p, int expected) throws IOException {
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return new double[0];
+        }
+        double[] values = new double[Math.max(expected, 16)];
+        int n = 0;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (n == values.length) values = Arrays.copyOf(values, n + (n >> 1));
+            values[n++] = readDouble(p);
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    // scalar conversions follow JsonNode.asDouble()/asLong(): null and non-numeric values become 0
+    private static double readDouble(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getDoubleValue();
+            case VALUE_STRING:
+                return p.getValueAsDouble();
+            case VALUE_TRUE:
+                return 1.0;
+            case START_OBJECT:
+            case START_ARRAY:
+                p.skipChildren();
+                return 0.0;
+            default:
+                return 0.0;
+        }
+    }
+
+    private static long readLong(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return p.getValueAsLong();
+            case VALUE_STRING:
+                return p.getValueAsLong();
+            case VALUE_TRUE:
+                return 1L;
+            case START_OBJECT:
+            case START_ARRAY:
+                p.skipChildren();
+                return 0L;
+            default:
+                return 0L;
+        }
+    }
+
+    private static String scalarText(JsonParser p, String defaultValue) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return "";
+        }
+        String s = p.getValueAsString();
+        return s != null ? s : defaultValue;
+    }
+
+    private static double[] fit(double[] column, int n) {
+        if (column == null) return new double[n];
+        return column.length == n ? column : Arrays.copyOf(column, n);
+    }
+
+    private static long[] fit(long[] column, int n) {
+        if (column == null) return new long[n];
+        return column.length == n ? column : Arrays.copyOf(column, n);
+    }
+
+    private static String text(JsonNode v) {
+        if (v == null || v.isMissingNode() || v.isNull()) return null;
+        if (v.has("fmt")) return v.path("fmt").asText(null);
+        return v.asText(null);
+    }
+
+    private static Double number(JsonNode v) {
+        if (v == null || v.isMissingNode() || v.isNull()) return null;
+        if (v.has("raw")) return v.path("raw").asDouble();
+        return v.asDouble();
+    }
+}
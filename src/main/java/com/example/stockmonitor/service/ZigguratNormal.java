@@ -0,0 +1,58 @@
+package com.example.stockmonitor.service;
+
+import java.util.SplittableRandom;
+
+/**
+ * Standard normal variates by the 128-layer ziggurat method (Marsaglia and Tsang, in Doornik's
+ * ZIGNOR form). Almost every sample costs one {@code nextLong} and one multiply.
+ */
+final class ZigguratNormal {
+
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899;
+    private static final double V = 9.91256303526217e-3;
+    private static final double[] X = new double[LAYERS + 1];
+    private static final double[] RATIO = new double[LAYERS];
+
+    static {
+        double f = Math.exp(-0.5 * R * R);
+        X[0] = V / f;
+        X[1] = R;
+        X[LAYERS] = 0.0;
+        for (int i = 2; i < LAYERS; i++) {
+            X[i] = Math.sqrt(-2.0 * Math.log(V / X[i - 1] + f));
+            f = Math.exp(-0.5 * X[i] * X[i]);
+        }
+        for (int i = 0; i < LAYERS; i++) {
+            RATIO[i] = X[i + 1] / X[i];
+        }
+    }
+
+    private ZigguratNormal() {
+    }
+
+    static double next(SplittableRandom random) {
+        while (true) {
+            long bits = random.nextLong();
+            // top 53 bits give u in [-1, 1), the low 7 bits pick the layer
+            double u = 2.0 * ((bits >>> 11) * 0x1.0p-53) - 1.0;
+            int i = (int) (bits & (LAYERS - 1));
+            if (Math.abs(u) < RATIO[i]) return u * X[i];
+            if (i == 0) return tail(random, u < 0);
+            double x = u * X[i];
+            double f0 = Math.exp(-0.5 * (X[i] * X[i] - x * x));
+            double f1 = Math.exp(-0.5 * (X[i + 1] * X[i + 1] - x * x));
+            if (f1 + random.nextDouble() * (f0 - f1) < 1.0) return x;
+        }
+    }
+
+    private static double tail(SplittableRandom random, boolean negative) {
+        double x;
+        double y;
+        do {
+            x = Math.log(1.0 - random.nextDouble()) / R;
+            y = Math.log(1.0 - random.nextDouble());
+        } while (-2.0 * y < x * x);
+        return negative ? x - R : R - x;
+    }
+}
@@ -1,14 +1,31 @@
 package com.example.stockmonitor.web;
 
+import com.example.stockmonitor.model.StockModels.AnalysisDiff;
 import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.BacktestReport;
 import com.example.stockmonitor.model.StockModels.GreedIndex;
+import com.example.stockmonitor.model.StockModels.Quote;
+import com.example.stockmonitor.model.StockModels.ScreenReport;
+import com.example.stockmonitor.model.StockModels.ScreenResult;
+import com.example.stockmonitor.model.StockModels.ShardStatus;
 import com.example.stockmonitor.model.StockModels.TradePlan;
 import com.example.stockmonitor.service.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Controller
 public class DashboardController {
@@ -17,10 +34,36 @@ public class DashboardController {
     private final MarketDataService marketData;
     private final AggregationService aggregationService;
     private final MonteCarloService monteCarloService;
+    private final AnalysisStore analysisStore;
+    private final AnalysisStreamService analysisStream;
+    private final TradePlanService tradePlans;
+    private final BacktestService backtestService;
+    private final VersionedResponses responses;
+    private final AlertService alertService;
+    private final ScreenService screenService;
+    private final ShardService shardService;
+
+    @Value("${monitor.montecarlo.max.paths:2000000}")
+    private int maxMonteCarloPaths;
+
+    @Value("${monitor.montecarlo.max.horizon.days:252}")
+    private int maxMonteCarloHorizonDays;
 
     public DashboardController(SchedulerService schedulerService, MarketDataService marketData,
-                               AggregationService aggregationService, MonteCarloService monteCarloService) {
+                               AggregationService aggregationService, MonteCarloService monteCarloService,
+                               AnalysisStore analysisStore, AnalysisStreamService analysisStream,
+                               TradePlanService tradePlans, BacktestService backtestService,
+                               VersionedResponses responses, AlertService alertService,
+                               ScreenService screenService, ShardService shardService) {
         this.schedulerService = schedulerService;
+        this.analysisStore = analysisStore;
+        this.analysisStream = analysisStream;
+        this.tradePlans = tradePlans;
+        this.backtestService = backtestService;
+        this.responses = responses;
+        this.alertService = alertService;
+        this.screenService = screenService;
+        this.shardService = shardService;
         this.marketData = marketData;
         this.aggregationService = aggregationService;
         this.monteCarloService = monteCarloService;
@@ -32,61 +75,124 @@ public class DashboardController {
         GreedIndex gi = schedulerService.getLatestGreedIndex();
         model.addAttribute("analyses", items);
         model.addAttribute("greedIndex", gi);
-        model.addAttribute("hotspots", aggregationService.computeSectorHotspots(items));
-        model.addAttribute("topPicks", aggregationService.pickTopByValue(items, 5));
+        model.addAttribute("hotspots", aggregationService.getSectorHotspots());
+        model.addAttribute("topPicks", aggregationService.getTopPicks(5));
         return "index";
     }
 
+    /**
+     * The read endpoints below carry a strong ETag tied to the snapshot version, so clients
+     * polling with If-None-Match get a 304 until the next scan cycle publishes.
+     */
     @GetMapping("/api/analyses")
+    public ResponseEntity<byte[]> analyses(HttpServletRequest request) {
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        return responses.respond("analyses", snapshot.getVersion(), request, snapshot::values);
+    }
+
+    /**
+     * Analyses updated and symbols evicted since the cursor of an earlier response; pass 0 for
+     * everything. A cursor from before a restart or from another node gets a full diff.
+     */
+    @GetMapping("/api/analyses/changes")
+    public ResponseEntity<byte[]> analysisChanges(@RequestParam(defaultValue = "0") String since,
+                                                  HttpServletRequest request) {
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        long sinceVersion = responses.cursorVersion(since);
+        return responses.respond("changes-" + sinceVersion, snapshot.getVersion(), request, () -> {
+            AnalysisDiff diff = analysisStore.diff(sinceVersion, snapshot);
+            diff.cursor = responses.cursor(diff.toVersion);
+            return diff;
+        });
+    }
+
+    /**
+     * Server-Sent Events stream: the current state on connect, then only the analyses that
+     * changed in each scan cycle, plus hotspot, top-pick and greed-index updates.
+     */
+    @GetMapping(path = "/api/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     @ResponseBody
-    public Collection<AnalysisResult> analyses() {
-        return schedulerService.getLatestAnalyses();
+    public SseEmitter stream() {
+        return analysisStream.subscribe();
     }
 
     @GetMapping("/api/hotspots")
-    @ResponseBody
-    public Object hotspots() {
-        return aggregationService.computeSectorHotspots(schedulerService.getLatestAnalyses());
+    public ResponseEntity<byte[]> hotspots(HttpServletRequest request) {
+        AggregationService.Aggregates aggregates = aggregationService.getAggregates();
+        return responses.respond("hotspots", aggregates.getVersion(), request, aggregates::getHotspots);
     }
 
     @GetMapping("/api/top-picks")
+    public ResponseEntity<byte[]> topPicks(HttpServletRequest request) {
+        AggregationService.Aggregates aggregates = aggregationService.getAggregates();
+        return responses.respond("topPicks", aggregates.getVersion(), request, () -> aggregates.getTopPicks(5));
+    }
+
+    /**
+     * Most recent alerts, newest first; new ones are also pushed on the stream as they are raised.
+     */
+    @GetMapping("/api/alerts")
+    public ResponseEntity<byte[]> alerts(HttpServletRequest request) {
+        return responses.respond("alerts", alertService.getSequence(), request, alertService::getRecent);
+    }
+
+    /**
+     * Every screen from the rules file with the symbols it matched in the latest snapshot.
+     */
+    @GetMapping("/api/screens")
+    public ResponseEntity<byte[]> screens(HttpServletRequest request) {
+        ScreenReport report = screenService.getReport();
+        return responses.respond("screens", report.version, request, () -> report);
+    }
+
+    @GetMapping("/api/screens/{name:[A-Za-z0-9_.-]+}")
+    public ResponseEntity<byte[]> screen(@PathVariable String name, HttpServletRequest request) {
+        ScreenReport report = screenService.getReport();
+        ScreenResult result = null;
+        for (ScreenResult r : report.screens) {
+            if (r.name.equals(name)) result = r;
+        }
+        if (result == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No screen named " + name);
+        ScreenResult found = result;
+        return responses.respond("screen-" + name, report.version, request, () -> found);
+    }
+
+    /**
+     * This node, the live members sharing the universe, and how much of it this node owns.
+     */
+    @GetMapping("/api/shards")
     @ResponseBody
-    public Object topPicks() {
-        return aggregationService.pickTopByValue(schedulerService.getLatestAnalyses(), 5);
+    public ShardStatus shards() {
+        return shardService.getStatus();
     }
 
     @PostMapping("/api/trade-plan")
     @ResponseBody
     public TradePlan tradePlan(@RequestParam String symbol, @RequestParam double capital) {
         // very simple volatility-based sizing using ATR if available
-        TradePlan tp = new TradePlan();
-        tp.symbol = symbol;
-        tp.capital = capital;
         double price = Double.NaN;
         double atr = Double.NaN;
-        AnalysisResult ar = null;
-        for (AnalysisResult r : schedulerService.getLatestAnalyses()) {
-            if (r.symbol.equalsIgnoreCase(symbol)) { ar = r; break; }
-        }
+        AnalysisResult ar = analysisStore.get(symbol);
         if (ar != null && ar.quote != null) {
             price = ar.quote.price;
         }
         if (ar != null && ar.technicals != null) {
             atr = ar.technicals.atr14;
         }
-        if (Double.isNaN(price) || price <= 0) price = marketData.fetchQuote(symbol).price;
-        if (Double.isNaN(atr) || atr <= 0) atr = 0.02 * price; // fallback 2%
-        double riskPerShare = Math.max(atr, 0.01 * price);
-        double riskPerTrade = 0.01 * capital; // 1% risk per trade
-        int qty = (int)Math.floor(riskPerTrade / riskPerShare);
-        if (qty < 1) qty = 1;
-        tp.quantity = qty;
-        tp.suggestedEntry = price;
-        tp.stopLoss = price - 1.5 * atr;
-        tp.takeProfit = price + 2.5 * atr;
-        tp.method = "VolatilityTarget(ATR)";
-        tp.notes = "Risk 1% of capital; SL 1.5x ATR, TP 2.5x ATR";
-        return tp;
+        if (Double.isNaN(price) || price <= 0) price = cachedPrice(symbol);
+        return tradePlans.plan(symbol, capital, price, atr);
+    }
+
+    /**
+     * Price for a symbol outside the current analyses, from the quote cache only so request
+     * threads never block on upstream calls.
+     */
+    private double cachedPrice(String symbol) {
+        Quote q = marketData.cachedQuote(AnalysisStore.normalize(symbol));
+        if (q == null || Double.isNaN(q.price) || q.price <= 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No recent quote for " + symbol);
+        }
+        return q.price;
     }
 
     public static class McResponse { public double prob; public double exp; public double var95; }
@@ -95,19 +201,120 @@ public class DashboardController {
     @ResponseBody
     public McResponse monteCarlo(@RequestParam String symbol,
                                  @RequestParam(defaultValue = "20") double horizonDays,
-                                 @RequestParam(defaultValue = "0.03") double dailyVolatility) {
-        AnalysisResult ar = null;
-        for (AnalysisResult r : schedulerService.getLatestAnalyses()) {
-            if (r.symbol.equalsIgnoreCase(symbol)) { ar = r; break; }
-        }
-        double price = (ar != null && ar.quote != null) ? ar.quote.price : marketData.fetchQuote(symbol).price;
+                                 @RequestParam(defaultValue = "0.03") double dailyVolatility,
+                                 @RequestParam(defaultValue = "5000") int paths,
+                                 @RequestParam(required = false) Long seed) {
+        AnalysisResult ar = analysisStore.get(symbol);
+        double price = (ar != null && ar.quote != null && ar.quote.price > 0) ? ar.quote.price : cachedPrice(symbol);
         double tp = price * 1.05;
         double sl = price * 0.97;
-        MonteCarloService.SimulationResult sr = monteCarloService.simulate(price, dailyVolatility, horizonDays, tp, sl, 5000);
+        int n = Math.max(1, Math.min(paths, maxMonteCarloPaths));
+        double days = Math.max(1, Math.min(horizonDays, maxMonteCarloHorizonDays));
+        MonteCarloService.SimulationResult sr = seed != null
+                ? monteCarloService.simulate(price, dailyVolatility, days, tp, sl, n, seed)
+                : monteCarloService.simulate(price, dailyVolatility, days, tp, sl, n);
         McResponse m = new McResponse();
         m.prob = sr.probabilityOfProfit;
         m.exp = sr.expectedReturn;
         m.var95 = sr.var95;
         return m;
     }
-}
\ No newline at end of file
+
+    public static class McBatchItem {
+        public String symbol;
+        public double price;
+        public double dailyVolatility;
+        public double prob;
+        public double exp;
+        public double var95;
+    }
+
+    /**
+     * The default batch over every current analysis, simulated once per snapshot version and
+     * seeded from it, so all dashboards share one result and revalidate it with the ETag.
+     */
+    @GetMapping("/api/monte-carlo/batch")
+    public ResponseEntity<byte[]> sharedMonteCarloBatch(HttpServletRequest request) {
+        AnalysisSnapshot snapshot = analysisStore.snapshot();
+        return responses.respond("monte-carlo", snapshot.getVersion(), request,
+                () -> simulateBatch(snapshot.values(), 20, 5000, snapshot.getVersion()));
+    }
+
+    /**
+     * Simulates every current analysis (or the requested symbols among them) in one pass,
+     * using each symbol's own ATR-derived volatility. Paths per symbol are capped so the
+     * whole batch stays within the per-request path budget, and the horizon is capped too.
+     */
+    @PostMapping("/api/monte-carlo/batch")
+    @ResponseBody
+    public List<McBatchItem> monteCarloBatch(@RequestParam(required = false) List<String> symbols,
+                                             @RequestParam(defaultValue = "20") double horizonDays,
+                                             @RequestParam(defaultValue = "5000") int paths,
+                                             @RequestParam(required = false) Long seed) {
+        Collection<AnalysisResult> candidates;
+        if (symbols == null || symbols.isEmpty()) {
+            candidates = analysisStore.values();
+        } else {
+            candidates = new LinkedHashSet<AnalysisResult>();
+            for (String s : symbols) {
+                AnalysisResult r = analysisStore.get(s);
+                if (r != null) candidates.add(r);
+            }
+        }
+        return simulateBatch(candidates, horizonDays, paths, seed != null ? seed : ThreadLocalRandom.current().nextLong());
+    }
+
+    private List<McBatchItem> simulateBatch(Collection<AnalysisResult> candidates, double horizonDays, int paths,
+                                            long seed) {
+        List<AnalysisResult> selected = new ArrayList<AnalysisResult>();
+        for (AnalysisResult r : candidates) {
+            if (r.quote != null && r.quote.price > 0) selected.add(r);
+        }
+        List<McBatchItem> items = new ArrayList<McBatchItem>(selected.size());
+        if (selected.isEmpty()) return items;
+        int n = selected.size();
+        double[] prices = new double[n];
+        double[] vols = new double[n];
+        double[] tps = new double[n];
+        double[] sls = new double[n];
+        for (int i = 0; i < n; i++) {
+            AnalysisResult r = selected.get(i);
+            prices[i] = r.quote.price;
+            double atr = r.technicals != null ? r.technicals.atr14 : Double.NaN;
+            vols[i] = monteCarloService.dailyVolatilityFromAtr(atr, prices[i]);
+            tps[i] = prices[i] * 1.05;
+            sls[i] = prices[i] * 0.97;
+        }
+        int perSymbol = Math.max(1, Math.min(paths, maxMonteCarloPaths / n));
+        double days = Math.max(1, Math.min(horizonDays, maxMonteCarloHorizonDays));
+        MonteCarloService.SimulationResult[] results =
+                monteCarloService.simulateBatch(prices, vols, days, tps, sls, perSymbol, seed);
+        for (int i = 0; i < n; i++) {
+            McBatchItem m = new McBatchItem();
+            m.symbol = selected.get(i).symbol;
+            m.price = prices[i];
+            m.dailyVolatility = vols[i];
+            m.prob = results[i].probabilityOfProfit;
+            m.exp = results[i].expectedReturn;
+            m.var95 = results[i].var95;
+            items.add(m);
+        }
+        return items;
+    }
+
+    /**
+     * Replays stored bars through the signal and sizing rules. Dates are inclusive, in UTC.
+     */
+    @PostMapping("/api/backtest")
+    @ResponseBody
+    public BacktestReport backtest(@RequestParam(required = false) List<String> symbols,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                   @RequestParam(defaultValue = "10000") double capital,
+                                   @RequestParam(defaultValue = "390") int maxHoldBars,
+                                   @RequestParam(defaultValue = "30") int chunkDays) {
+        long fromSeconds = from != null ? from.atStartOfDay(ZoneOffset.UTC).toEpochSecond() : Long.MIN_VALUE;
+        long toSeconds = to != null ? to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond() - 1 : Long.MAX_VALUE;
+        return backtestService.run(symbols, fromSeconds, toSeconds, capital, maxHoldBars, chunkDays);
+    }
+}
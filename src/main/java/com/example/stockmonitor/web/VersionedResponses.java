@@ -0,0 +1,159 @@
+package com.example.stockmonitor.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON bodies of read endpoints, cached per resource and data version. The strong ETag is made
+ * from the resource name and version alone, so a matching {@code If-None-Match} gets a 304 before
+ * any content is built. Otherwise the body is serialised, and gzipped, once per version.
+ * Counted as {@code monitor.http.conditional} by result: notModified, hit or miss.
+ * <p>
+ * Versions start again after a restart and each shard counts its own, so tags and change cursors
+ * also carry an epoch drawn at random when the process starts. One from another run or another
+ * node never matches.
+ */
+@Component
+public class VersionedResponses {
+
+    // one entry per resource, plus one per distinct changes?since= value in use
+    private static final int MAX_ENTRIES = 64;
+
+    private final ObjectMapper mapper;
+    private final String epoch = Long.toUnsignedString(new SecureRandom().nextLong(), 36);
+    private final Map<String, Body> bodies = new ConcurrentHashMap<String, Body>();
+    private final Counter notModified;
+    private final Counter hits;
+    private final Counter misses;
+
+    private static class Body {
+        final long version;
+        final byte[] plain;
+        final byte[] gzip;
+
+        Body(long version, byte[] plain, byte[] gzip) {
+            this.version = version;
+            this.plain = plain;
+            this.gzip = gzip;
+        }
+    }
+
+    public VersionedResponses(ObjectMapper mapper, MeterRegistry meterRegistry) {
+        this.mapper = mapper;
+        this.notModified = meterRegistry.counter("monitor.http.conditional", "result", "notModified");
+        this.hits = meterRegistry.counter("monitor.http.conditional", "result", "hit");
+        this.misses = meterRegistry.counter("monitor.http.conditional", "result", "miss");
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Opaque position in a version sequence of this process, for {@code since=} parameters.
+     */
+    public String cursor(long version) {
+        return epoch + "." + version;
+    }
+
+    /**
+     * The version a {@link #cursor} stands for; 0 for "0" or empty, meaning from the start, and
+     * -1 for a cursor of another process or anything unparseable.
+     */
+    public long cursorVersion(String cursor) {
+        if (cursor == null || cursor.isEmpty() || "0".equals(cursor)) return 0L;
+        int dot = cursor.lastIndexOf('.');
+        if (dot < 0 || !epoch.equals(cursor.substring(0, dot))) return -1L;
+        try {
+            return Long.parseLong(cursor.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * @param resource name used in the ETag and as cache key; must be a plain token
+     * @param version  version of the data {@code content} returns
+     * @param content  builds the response object; only called on a cache miss
+     */
+    public ResponseEntity<byte[]> respond(String resource, long version, HttpServletRequest request,
+                                          Supplier<?> content) {
+        String etag = "\"" + resource + "-" + epoch + "-" + version + "\"";
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            notModified.increment();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        Body body = bodies.get(resource);
+        if (body != null && body.version == version) {
+            hits.increment();
+        } else {
+            misses.increment();
+            if (bodies.size() >= MAX_ENTRIES) bodies.clear();
+            body = bodies.compute(resource, (k, old) -> old != null && old.version == version ? old : build(version, content.get()));
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(request)) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip);
+        }
+        return builder.body(body.plain);
+    }
+
+    private Body build(long version, Object content) {
+        try {
+            byte[] plain = mapper.writeValueAsBytes(content);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, plain.length / 4));
+            try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                gz.write(plain);
+            }
+            return new Body(version, plain, out.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2); // weak comparison, as for GET
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (accept == null) return false;
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!"gzip".equalsIgnoreCase(parts[0].trim())) continue;
+            // gzip;q=0 means not acceptable
+            return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+}
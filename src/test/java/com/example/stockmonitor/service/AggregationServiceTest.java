@@ -0,0 +1,80 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.Quote;
+import com.example.stockmonitor.model.StockModels.SectorHotspot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The hotspots kept up to date from snapshots must equal the batch computation over the same
+ * analyses, however many updates they went through.
+ */
+class AggregationServiceTest {
+
+    private final AnalysisStore store = new AnalysisStore(60, 10, new SimpleMeterRegistry());
+    private final AggregationService aggregation = new AggregationService(store);
+
+    @Test
+    void nanChangeDoesNotPoisonTheSector() {
+        store.put(analysis("AAA", "Tech", -2.0, 100));
+        store.put(analysis("BBB", "Tech", Double.NaN, 50));
+        store.put(analysis("CCC", "Tech", -4.0, 10));
+        store.completeCycle(null);
+        assertEquals(-2.0, hotspot("Tech").averageDropPercent, 1e-12);
+
+        store.put(analysis("BBB", "Tech", -3.0, 50));
+        store.completeCycle(null);
+        assertEquals(-3.0, hotspot("Tech").averageDropPercent, 1e-12);
+        assertEquals(160, hotspot("Tech").totalVolume);
+    }
+
+    @Test
+    void incrementalMatchesBatchAfterManyUpdates() {
+        Random random = new Random(7);
+        String[] sectors = {"Tech", "Energy", "Health"};
+        for (int cycle = 0; cycle < 200; cycle++) {
+            for (int i = 0; i < 5; i++) {
+                int n = random.nextInt(30);
+                double change = -random.nextDouble() * 1e6 + random.nextDouble() * 1e-6;
+                store.put(analysis("S" + n, sectors[n % sectors.length], change, random.nextInt(1000)));
+            }
+            store.completeCycle(null);
+        }
+        List<SectorHotspot> batch = aggregation.computeSectorHotspots(store.values());
+        List<SectorHotspot> live = aggregation.getSectorHotspots();
+        assertEquals(batch.size(), live.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batch.get(i).sector, live.get(i).sector);
+            assertEquals(batch.get(i).losersCount, live.get(i).losersCount);
+            assertEquals(batch.get(i).totalVolume, live.get(i).totalVolume);
+            assertEquals(batch.get(i).averageDropPercent, live.get(i).averageDropPercent,
+                    Math.abs(batch.get(i).averageDropPercent) * 1e-12);
+        }
+    }
+
+    private SectorHotspot hotspot(String sector) {
+        for (SectorHotspot s : aggregation.getSectorHotspots()) {
+            if (s.sector.equals(sector)) return s;
+        }
+        throw new AssertionError("no hotspot for " + sector);
+    }
+
+    private static AnalysisResult analysis(String symbol, String sector, double changePercent, long volume) {
+        AnalysisResult ar = new AnalysisResult();
+        ar.symbol = symbol;
+        ar.sector = sector;
+        ar.quote = new Quote();
+        ar.quote.symbol = symbol;
+        ar.quote.asOf = Instant.now();
+        ar.quote.changePercent = changePercent;
+        ar.quote.volume = volume;
+        return ar;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.Fundamentals;
+import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A re-analysed symbol is pushed whenever anything {@code /api/analyses} would serve changed.
+ */
+class AnalysisStreamServiceTest {
+
+    private final AnalysisStore store = new AnalysisStore(60, 10, new SimpleMeterRegistry());
+    private final AnalysisStreamService stream = new AnalysisStreamService(store, new AggregationService(store),
+            new ObjectMapper().findAndRegisterModules(), 1, 30, 60);
+
+    @AfterEach
+    void stop() {
+        stream.shutdown();
+    }
+
+    @Test
+    void unchangedAnalysisIsTheSame() {
+        assertTrue(stream.sameContent(analysis(), analysis()));
+    }
+
+    @Test
+    void anySerialisedFieldCounts() {
+        AnalysisResult ema = analysis();
+        ema.technicals.ema20 = 101;
+        AnalysisResult obv = analysis();
+        obv.timeframes.get("1h").obv = 5000;
+        AnalysisResult fundamentals = analysis();
+        fundamentals.fundamentals.peRatio = 30.0;
+        AnalysisResult industry = analysis();
+        industry.industry = "Consumer Electronics";
+
+        for (AnalysisResult changed : new AnalysisResult[] {ema, obv, fundamentals, industry}) {
+            assertFalse(stream.sameContent(analysis(), changed));
+        }
+    }
+
+    private static AnalysisResult analysis() {
+        AnalysisResult ar = new AnalysisResult();
+        ar.symbol = "AAPL";
+        ar.industry = "Computer Hardware";
+        ar.technicals = new TechnicalSnapshot();
+        ar.technicals.ema20 = 100;
+        ar.timeframes = Collections.singletonMap("1h", new TechnicalSnapshot());
+        ar.fundamentals = new Fundamentals();
+        ar.fundamentals.peRatio = 28.0;
+        return ar;
+    }
+}
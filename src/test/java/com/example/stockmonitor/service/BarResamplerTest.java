@@ -0,0 +1,154 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bucket alignment of {@link BarResampler}, and incremental updates giving the same series as a
+ * fresh build for growing, revised and head-trimmed sources.
+ */
+class BarResamplerTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    void intradayBucketsAlignToTheSessionOpen() {
+        // the Monday after the spring DST change
+        LocalDate day = LocalDate.of(2024, 3, 11);
+        BarSeries bars = session(day, 0, 78);
+
+        Map<String, BarSeries> frames = new BarResampler("15m,1h").resample("T", bars);
+
+        BarSeries m15 = frames.get("15m");
+        assertEquals(26, m15.size());
+        for (int i = 0; i < m15.size(); i++) {
+            assertEquals(at(day, 9, 30) + i * 900L, m15.time(i), "15m bucket " + i);
+        }
+        // first 15m bucket from 5m bars 0..2
+        assertEquals(bars.open(0), m15.open(0));
+        assertEquals(bars.close(2), m15.close(0));
+        assertEquals(Math.max(bars.high(0), Math.max(bars.high(1), bars.high(2))), m15.high(0));
+        assertEquals(Math.min(bars.low(0), Math.min(bars.low(1), bars.low(2))), m15.low(0));
+        assertEquals(bars.volume(0) + bars.volume(1) + bars.volume(2), m15.volume(0));
+
+        BarSeries h1 = frames.get("1h");
+        assertEquals(7, h1.size());
+        assertEquals(at(day, 9, 30), h1.time(0));
+        assertEquals(at(day, 15, 30), h1.time(6));
+        // 15:30-16:00 holds the last six 5m bars
+        long lastVolume = 0;
+        for (int i = 72; i < 78; i++) lastVolume += bars.volume(i);
+        assertEquals(lastVolume, h1.volume(6));
+    }
+
+    @Test
+    void dailyBucketsFollowTheExchangeDate() {
+        // 16:00 ET is already the next day in UTC; the fall DST change lands in between
+        LocalDate friday = LocalDate.of(2024, 11, 1);
+        LocalDate monday = LocalDate.of(2024, 11, 4);
+        BarSeries bars = session(friday, 0, 78);
+        BarSeries next = session(monday, 78, 78);
+        for (int i = 0; i < next.size(); i++) {
+            bars.add(next.time(i), next.open(i), next.high(i), next.low(i), next.close(i), next.volume(i));
+        }
+
+        BarSeries d1 = new BarResampler("1d").resample("T", bars).get("1d");
+
+        assertEquals(2, d1.size());
+        assertEquals(friday.atStartOfDay(NEW_YORK).toEpochSecond(), d1.time(0));
+        assertEquals(monday.atStartOfDay(NEW_YORK).toEpochSecond(), d1.time(1));
+        assertEquals(bars.close(77), d1.close(0));
+        assertEquals(bars.open(78), d1.open(1));
+    }
+
+    @Test
+    void partialLeadingBucketIsDropped() {
+        LocalDate day = LocalDate.of(2024, 3, 12);
+        BarSeries bars = session(day, 0, 78);
+        // starts at 9:40, partway into the first 15m and 1h buckets and after the open
+        bars.dropHead(2);
+
+        Map<String, BarSeries> frames = new BarResampler("15m,1h,1d").resample("T", bars);
+
+        assertEquals(at(day, 9, 45), frames.get("15m").firstTime());
+        assertEquals(at(day, 10, 30), frames.get("1h").firstTime());
+        assertTrue(frames.get("1d").isEmpty());
+    }
+
+    @Test
+    void incrementalMatchesFullBuild() throws IOException {
+        BarSeries recorded;
+        try (InputStream in = getClass().getResourceAsStream("/replay/chart-5m-1mo.json")) {
+            assertNotNull(in, "recorded chart fixture");
+            recorded = new YahooResponseParser(new ObjectMapper()).parseChart(in);
+        }
+        BarResampler incremental = new BarResampler("15m,1h,1d");
+        int window = 400;
+        for (int end = 1; end <= recorded.size(); end += end < 100 ? 1 : 5) {
+            BarSeries bars = recorded.copy();
+            bars.truncate(end);
+            // a rolling window trims the head at arbitrary bars, often mid-bucket
+            if (end > window) bars.dropHead(end - window);
+            assertSameFrames(new BarResampler("15m,1h,1d").resample("T", bars),
+                    incremental.resample("T", bars), "after " + end + " bars");
+
+            // the forming bar is revised before the next one arrives
+            BarSeries revised = bars.copy();
+            int last = revised.size() - 1;
+            double close = revised.close(last) * 1.002;
+            long time = revised.time(last);
+            double open = revised.open(last);
+            double high = Math.max(revised.high(last), close);
+            double low = revised.low(last);
+            long volume = revised.volume(last) + 100;
+            revised.truncate(last);
+            revised.add(time, open, high, low, close, volume);
+            assertSameFrames(new BarResampler("15m,1h,1d").resample("T", revised),
+                    incremental.resample("T", revised), "revised tail after " + end + " bars");
+        }
+    }
+
+    private static void assertSameFrames(Map<String, BarSeries> expected, Map<String, BarSeries> actual, String where) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String label : expected.keySet()) {
+            BarSeries e = expected.get(label);
+            BarSeries a = actual.get(label);
+            assertEquals(e.size(), a.size(), label + " size " + where);
+            for (int i = 0; i < e.size(); i++) {
+                String at = label + " bucket " + i + " " + where;
+                assertEquals(e.time(i), a.time(i), "time " + at);
+                assertEquals(e.open(i), a.open(i), "open " + at);
+                assertEquals(e.high(i), a.high(i), "high " + at);
+                assertEquals(e.low(i), a.low(i), "low " + at);
+                assertEquals(e.close(i), a.close(i), "close " + at);
+                assertEquals(e.volume(i), a.volume(i), "volume " + at);
+            }
+        }
+    }
+
+    // n 5m bars from the 9:30 open, with prices that differ bar to bar
+    private static BarSeries session(LocalDate day, int seed, int n) {
+        BarSeries bars = new BarSeries(n);
+        long open = at(day, 9, 30);
+        for (int i = 0; i < n; i++) {
+            double base = 100 + ((seed + i) * 37 % 23) * 0.1;
+            bars.add(open + i * 300L, base, base + 0.5 + (i % 3) * 0.1, base - 0.4 - (i % 4) * 0.1,
+                    base + 0.2, 1000 + (seed + i) * 13L);
+        }
+        return bars;
+    }
+
+    private static long at(LocalDate day, int hour, int minute) {
+        return day.atTime(LocalTime.of(hour, minute)).atZone(NEW_YORK).toEpochSecond();
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.ShardResults;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Symbol ownership on the consistent-hash ring, and two nodes sharing a universe through
+ * {@link FileShardCoordinator}s on one directory, as separate processes would.
+ */
+class ShardServiceTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private final List<ShardService> started = new ArrayList<ShardService>();
+
+    @AfterEach
+    void leave() {
+        for (ShardService s : started) s.shutdown();
+    }
+
+    @Test
+    void joiningMemberTakesOnlyItsOwnShare() {
+        ShardService.Ring before = ring("a", "b", "c");
+        ShardService.Ring after = ring("a", "b", "c", "d");
+        int moved = 0;
+        for (String symbol : symbols(5000)) {
+            String was = before.owner(symbol);
+            String now = after.owner(symbol);
+            if (!was.equals(now)) {
+                assertEquals("d", now, symbol + " moved between existing members");
+                moved++;
+            }
+        }
+        // about a quarter of the symbols, never most of them
+        assertTrue(moved > 800 && moved < 2000, moved + " symbols moved");
+    }
+
+    @Test
+    void leavingMemberHandsOnlyItsShareOn() {
+        ShardService.Ring before = ring("a", "b", "c", "d");
+        ShardService.Ring after = ring("a", "b", "d");
+        for (String symbol : symbols(5000)) {
+            String was = before.owner(symbol);
+            if (!was.equals("c")) assertEquals(was, after.owner(symbol), symbol);
+            else assertNotEquals("c", after.owner(symbol), symbol);
+        }
+    }
+
+    @Test
+    void ownershipIsDisjointAndCoversEverySymbol() throws IOException {
+        ShardService alpha = node("alpha", new AnalysisStore(60, 10, new SimpleMeterRegistry()));
+        ShardService beta = node("beta", new AnalysisStore(60, 10, new SimpleMeterRegistry()));
+        alpha.heartbeat();
+        assertEquals(2, alpha.memberCount());
+        assertEquals(2, beta.memberCount());
+
+        int alphaOwns = 0;
+        for (String symbol : symbols(2000)) {
+            boolean a = alpha.owns(symbol);
+            boolean b = beta.owns(symbol);
+            assertTrue(a ^ b, symbol + " owned by " + (a ? "both" : "neither"));
+            if (a) alphaOwns++;
+        }
+        assertTrue(alphaOwns > 600 && alphaOwns < 1400, "alpha owns " + alphaOwns);
+        // case and whitespace do not change the owner
+        assertEquals(alpha.owns("AAPL"), alpha.owns(" aapl "));
+    }
+
+    @Test
+    void mergeTakesPeerSymbolsButNeverOverwritesOwnOnes() throws IOException {
+        // a peer driven directly, so no background export of its own replaces what it publishes
+        FileShardCoordinator peer = new FileShardCoordinator(dir.toString());
+        peer.heartbeat("gamma", TIMEOUT);
+        AnalysisStore alphaStore = new AnalysisStore(60, 10, new SimpleMeterRegistry());
+        ShardService alpha = node("alpha", alphaStore);
+        assertEquals(2, alpha.memberCount());
+        String own = firstOwnedBy(alpha, true);
+        String unheld = firstOwnedBy(alpha, true, own);
+        String peers = firstOwnedBy(alpha, false);
+
+        alphaStore.put(analysis(own, "alpha"));
+        alphaStore.completeCycle(null);
+
+        // gamma publishes newer analyses of all three, as a stale export or a fast clock would
+        Instant later = Instant.now().plusSeconds(600);
+        ShardResults results = new ShardResults();
+        results.nodeId = "gamma";
+        results.publishedAt = later;
+        results.analyses = Arrays.asList(analysis(own, "gamma"), analysis(unheld, "gamma"), analysis(peers, "gamma"));
+        results.refreshedAt = new HashMap<String, Instant>();
+        for (AnalysisResult ar : results.analyses) results.refreshedAt.put(ar.symbol, later);
+        peer.publish("gamma", mapper.writeValueAsBytes(results));
+        peer.heartbeat("gamma", TIMEOUT);
+
+        alpha.heartbeat();
+
+        assertEquals("alpha", alphaStore.get(own).name);
+        assertEquals("gamma", alphaStore.get(peers).name);
+        // nothing held here yet, so the peer's copy fills the gap until this node scans it
+        assertEquals("gamma", alphaStore.get(unheld).name);
+    }
+
+    @Test
+    void fileCoordinatorsShareMembersAndResults() throws IOException {
+        FileShardCoordinator one = new FileShardCoordinator(dir.toString());
+        FileShardCoordinator two = new FileShardCoordinator(dir.toString());
+
+        assertEquals(Collections.singletonList("one"), one.heartbeat("one", TIMEOUT));
+        assertEquals(Arrays.asList("one", "two"), two.heartbeat("two", TIMEOUT));
+        assertEquals(Arrays.asList("one", "two"), one.heartbeat("one", TIMEOUT));
+
+        assertEquals(-1L, one.resultsVersion("two"));
+        assertNull(one.readResults("two"));
+        two.publish("two", "{\"n\":1}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(one.resultsVersion("two") >= 0);
+        assertEquals("{\"n\":1}", new String(one.readResults("two"), StandardCharsets.UTF_8));
+
+        two.leave("two");
+        assertEquals(Collections.singletonList("one"), one.heartbeat("one", TIMEOUT));
+        // results outlive a clean leave until they are older than the timeout
+        assertNotNull(one.readResults("two"));
+    }
+
+    @Test
+    void fileCoordinatorReapsMembersThatStopHeartbeating() throws IOException {
+        FileShardCoordinator one = new FileShardCoordinator(dir.toString());
+        FileShardCoordinator two = new FileShardCoordinator(dir.toString());
+        two.heartbeat("two", TIMEOUT);
+        two.publish("two", new byte[] {'{', '}'});
+        // as if two was killed a minute ago
+        long stale = System.currentTimeMillis() - 60_000L;
+        Files.write(dir.resolve("members").resolve("two"), Long.toString(stale).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dir.resolve("results").resolve("two.json"), FileTime.fromMillis(stale));
+
+        assertEquals(Collections.singletonList("one"), one.heartbeat("one", TIMEOUT));
+        assertFalse(Files.exists(dir.resolve("members").resolve("two")));
+        assertEquals(-1L, one.resultsVersion("two"));
+    }
+
+    private ShardService node(String id, AnalysisStore store) throws IOException {
+        TrafficController traffic = new TrafficController(0, 1, 4, 16, 0, 1, 2, 5, 30, new SimpleMeterRegistry());
+        ShardService s = new ShardService(new FileShardCoordinator(dir.toString()), store, traffic, mapper,
+                id, TIMEOUT.getSeconds(), VIRTUAL_NODES, false, new SimpleMeterRegistry());
+        started.add(s);
+        return s;
+    }
+
+    private static ShardService.Ring ring(String... members) {
+        return new ShardService.Ring(Arrays.asList(members), VIRTUAL_NODES);
+    }
+
+    private static String firstOwnedBy(ShardService node, boolean owned, String... except) {
+        for (String symbol : symbols(1000)) {
+            if (node.owns(symbol) == owned && !Arrays.asList(except).contains(symbol)) return symbol;
+        }
+        throw new AssertionError("no symbol found");
+    }
+
+    private static List<String> symbols(int n) {
+        List<String> symbols = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) symbols.add("S" + Integer.toString(i * 7919, 36).toUpperCase(Locale.ROOT));
+        return symbols;
+    }
+
+    private static AnalysisResult analysis(String symbol, String writtenBy) {
+        AnalysisResult ar = new AnalysisResult();
+        ar.symbol = symbol;
+        ar.name = writtenBy;
+        return ar;
+    }
+}
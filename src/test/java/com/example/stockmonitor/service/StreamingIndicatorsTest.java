@@ -0,0 +1,107 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.TechnicalSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The streaming engine must give exactly the batch snapshot for whatever series it is handed,
+ * including forming and revised tail bars and a head dropped by the rolling window.
+ */
+class StreamingIndicatorsTest {
+
+    private final IndicatorService batch = new IndicatorService();
+    private BarSeries recorded;
+
+    @BeforeEach
+    void loadFixture() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/replay/chart-5m-1mo.json")) {
+            assertNotNull(in, "recorded chart fixture");
+            recorded = new YahooResponseParser(new ObjectMapper()).parseChart(in);
+        }
+        assertTrue(recorded.size() > 200, "fixture has enough bars");
+    }
+
+    @Test
+    void matchesBatchBarByBar() {
+        StreamingIndicators streaming = new StreamingIndicators();
+        for (int n = 1; n <= recorded.size(); n++) {
+            BarSeries bars = prefix(n);
+            assertSnapshot(batch.computeTechnicalSnapshot(bars), streaming.snapshot(bars), "after " + n + " bars");
+        }
+    }
+
+    @Test
+    void matchesBatchWhenTailBarsAreRevised() {
+        StreamingIndicators streaming = new StreamingIndicators();
+        for (int n = 20; n <= recorded.size(); n += 7) {
+            BarSeries bars = prefix(n);
+            streaming.snapshot(bars);
+
+            // the forming bar moves, as it does between fetches
+            BarSeries forming = revise(bars, n - 1, 1.003, 2);
+            assertSnapshot(batch.computeTechnicalSnapshot(forming), streaming.snapshot(forming), "forming bar at " + n);
+
+            // bars already committed are corrected upstream
+            for (int back = 2; back <= StreamingIndicators.TAIL_CHECK + 1; back++) {
+                BarSeries corrected = revise(forming, n - back, 0.995, 3);
+                assertSnapshot(batch.computeTechnicalSnapshot(corrected), streaming.snapshot(corrected),
+                        "bar " + back + " from the end corrected at " + n);
+            }
+        }
+    }
+
+    @Test
+    void matchesBatchWhenHeadMoves() {
+        StreamingIndicators streaming = new StreamingIndicators();
+        int window = 300;
+        for (int end = window; end <= recorded.size(); end += 25) {
+            BarSeries bars = prefix(end);
+            bars.dropHead(end - window);
+            assertSnapshot(batch.computeTechnicalSnapshot(bars), streaming.snapshot(bars), "window ending at " + end);
+            BarSeries grown = prefix(Math.min(recorded.size(), end + 3));
+            grown.dropHead(end - window);
+            assertSnapshot(batch.computeTechnicalSnapshot(grown), streaming.snapshot(grown), "grown window at " + end);
+        }
+    }
+
+    @Test
+    void emptyBelowMinimumBars() {
+        TechnicalSnapshot t = new StreamingIndicators().snapshot(prefix(StreamingIndicators.MIN_BARS - 1));
+        assertSnapshot(new TechnicalSnapshot(), t, "short series");
+    }
+
+    private BarSeries prefix(int n) {
+        BarSeries bars = recorded.copy();
+        bars.truncate(n);
+        return bars;
+    }
+
+    private static BarSeries revise(BarSeries bars, int index, double closeFactor, long volumeFactor) {
+        BarSeries out = new BarSeries(bars.size());
+        for (int i = 0; i < bars.size(); i++) {
+            double close = i == index ? bars.close(i) * closeFactor : bars.close(i);
+            long volume = i == index ? bars.volume(i) * volumeFactor + 1 : bars.volume(i);
+            out.add(bars.time(i), bars.open(i), Math.max(bars.high(i), close), Math.min(bars.low(i), close), close, volume);
+        }
+        return out;
+    }
+
+    private static void assertSnapshot(TechnicalSnapshot expected, TechnicalSnapshot actual, String where) {
+        assertEquals(expected.rsi14, actual.rsi14, "rsi14 " + where);
+        assertEquals(expected.ema20, actual.ema20, "ema20 " + where);
+        assertEquals(expected.ema50, actual.ema50, "ema50 " + where);
+        assertEquals(expected.atr14, actual.atr14, "atr14 " + where);
+        assertEquals(expected.obv, actual.obv, "obv " + where);
+        assertEquals(expected.volumeZScore, actual.volumeZScore, "volumeZScore " + where);
+    }
+}
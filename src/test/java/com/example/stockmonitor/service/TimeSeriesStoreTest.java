@@ -0,0 +1,205 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.example.stockmonitor.model.StockModels.AnalysisResult;
+import com.example.stockmonitor.model.StockModels.Quote;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Restore, read failures and retention of {@link TimeSeriesStore} in a temporary directory.
+ */
+class TimeSeriesStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    private SimpleMeterRegistry registry;
+    private AnalysisStore analyses;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        analyses = new AnalysisStore(60, 10, registry);
+    }
+
+    @Test
+    void restoreSkipsACorruptRecordAndKeepsTheRest() throws IOException {
+        Path journal = dir.resolve("journal");
+        Files.createDirectories(journal);
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        record(buf, 'A', mapper.writeValueAsBytes(analysis("AAPL")));
+        record(buf, 'A', "{\"symbol\":\"MSFT\",".getBytes(StandardCharsets.UTF_8));
+        record(buf, 'A', mapper.writeValueAsBytes(analysis("NVDA")));
+        // torn tail: a length prefix promising more than was written
+        buf.put((byte) 'A').putInt(500).put((byte) '{');
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        Files.write(journal.resolve(LocalDate.now(ZoneOffset.UTC) + ".log"), bytes);
+
+        store(365).afterSingletonsInstantiated();
+
+        assertNotNull(analyses.get("AAPL"));
+        assertNotNull(analyses.get("NVDA"));
+        assertNull(analyses.get("MSFT"));
+        assertEquals(1.0, storageErrors());
+    }
+
+    @Test
+    void restoreWithoutCheckpointReadsYesterdaysJournalToo() throws IOException {
+        Path journal = dir.resolve("journal");
+        Files.createDirectories(journal);
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Files.write(journal.resolve(today.minusDays(1) + ".log"), journal(analysis("AAPL"), analysis("MSFT")));
+        // just after midnight: today holds only what the first cycle rescanned
+        Files.write(journal.resolve(today + ".log"), journal(analysis("AAPL")));
+
+        store(365).afterSingletonsInstantiated();
+
+        assertNotNull(analyses.get("AAPL"));
+        assertNotNull(analyses.get("MSFT"));
+        assertEquals(0.0, storageErrors());
+    }
+
+    @Test
+    void restoreStartsFromTheCheckpoint() throws IOException {
+        TimeSeriesStore first = store(365);
+        first.afterSingletonsInstantiated();
+        analyses.put(analysis("AAPL"));
+        analyses.completeCycle(null);
+        first.checkpoint();
+        Path journal = dir.resolve("journal").resolve(LocalDate.now(ZoneOffset.UTC) + ".log");
+        int checkpointed = (int) Files.size(journal);
+        analyses.put(analysis("MSFT"));
+        analyses.completeCycle(null);
+
+        // garbage where the checkpointed records were: replaying them would stop at once
+        byte[] bytes = Files.readAllBytes(journal);
+        Arrays.fill(bytes, 0, checkpointed, (byte) 0xFF);
+        Files.write(journal, bytes);
+        analyses = new AnalysisStore(60, 10, registry);
+        store(365).afterSingletonsInstantiated();
+
+        assertNotNull(analyses.get("AAPL"));
+        assertNotNull(analyses.get("MSFT"));
+        assertEquals(0.0, storageErrors());
+    }
+
+    @Test
+    void unreadableBarFileIsCountedNotMistakenForSuccess() throws IOException {
+        TimeSeriesStore store = store(365);
+        store.afterSingletonsInstantiated();
+        // a directory where the bar file should be cannot be opened for reading
+        Files.createDirectories(dir.resolve("bars").resolve("AAPL.bin"));
+
+        assertTrue(store.loadBars("AAPL", Long.MIN_VALUE).isEmpty());
+        assertTrue(store.loadBars("MSFT", Long.MIN_VALUE).isEmpty());
+        assertEquals(1.0, storageErrors());
+    }
+
+    @Test
+    void onlyLiveLoadsCompactRevisedBars() throws IOException {
+        TimeSeriesStore store = store(365);
+        store.afterSingletonsInstantiated();
+        BarSeries bars = new BarSeries(2);
+        bars.add(1000, 1, 1, 1, 1, 10);
+        bars.add(1300, 2, 2, 2, 2, 20);
+        store.appendBars("AAPL", bars, 0);
+        // the forming bar revised three times: four of six records superseded
+        for (int i = 0; i < 3; i++) store.appendBars("AAPL", bars, 1);
+        Path file = dir.resolve("bars").resolve("AAPL.bin");
+        long size = Files.size(file);
+
+        assertEquals(2, store.readBars("AAPL", Long.MIN_VALUE).size());
+        assertEquals(size, Files.size(file));
+        assertEquals(2, store.loadBars("AAPL", Long.MIN_VALUE).size());
+        assertEquals(2L * TimeSeriesStore.BAR_RECORD_BYTES, Files.size(file));
+    }
+
+    @Test
+    void purgeDropsExpiredJournalsBarsAndQuotes() throws IOException {
+        TimeSeriesStore store = store(30);
+        store.afterSingletonsInstantiated();
+        Path journal = dir.resolve("journal");
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        Path old = Files.write(journal.resolve(today.minusDays(40) + ".log"), new byte[0]);
+        Path recent = Files.write(journal.resolve(today.minusDays(2) + ".log"), new byte[0]);
+
+        long now = Instant.now().getEpochSecond();
+        long day = Duration.ofDays(1).getSeconds();
+        BarSeries bars = new BarSeries(4);
+        bars.add(now - 50 * day, 1, 1, 1, 1, 10);
+        bars.add(now - 31 * day, 2, 2, 2, 2, 20);
+        bars.add(now - 10 * day, 3, 3, 3, 3, 30);
+        bars.add(now - day, 4, 4, 4, 4, 40);
+        store.appendBars("AAPL", bars, 0);
+        BarSeries expired = new BarSeries(1);
+        expired.add(now - 60 * day, 5, 5, 5, 5, 50);
+        store.appendBars("OLD", expired, 0);
+        store.appendQuote("AAPL", quote(now - 45 * day, 100));
+        store.appendQuote("AAPL", quote(now - 5 * day, 101));
+
+        store.purgeExpired();
+
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+        BarSeries kept = store.loadBars("AAPL", Long.MIN_VALUE);
+        assertEquals(2, kept.size());
+        assertEquals(now - 10 * day, kept.firstTime());
+        assertEquals(1, store.storedSymbols().size());
+        assertEquals(1, store.loadQuotes("AAPL").size());
+        assertEquals(101.0, store.loadQuotes("AAPL").get(0).price);
+        assertEquals(0.0, storageErrors());
+    }
+
+    private TimeSeriesStore store(long retentionDays) {
+        return new TimeSeriesStore(analyses, mapper, true, dir.toString(), retentionDays, registry);
+    }
+
+    private double storageErrors() {
+        return registry.counter("monitor.errors", "source", "storage").count();
+    }
+
+    private byte[] journal(AnalysisResult... records) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        for (AnalysisResult ar : records) record(buf, 'A', mapper.writeValueAsBytes(ar));
+        return Arrays.copyOf(buf.array(), buf.position());
+    }
+
+    private static void record(ByteBuffer buf, char type, byte[] json) {
+        buf.put((byte) type).putInt(json.length).put(json);
+    }
+
+    private static AnalysisResult analysis(String symbol) {
+        AnalysisResult ar = new AnalysisResult();
+        ar.symbol = symbol;
+        ar.quote = quote(Instant.now().getEpochSecond(), 10);
+        ar.quote.symbol = symbol;
+        return ar;
+    }
+
+    private static Quote quote(long epochSecond, double price) {
+        Quote q = new Quote();
+        q.asOf = Instant.ofEpochSecond(epochSecond);
+        q.price = price;
+        return q;
+    }
+}
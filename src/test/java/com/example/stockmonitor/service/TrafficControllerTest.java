@@ -0,0 +1,263 @@
+package com.example.stockmonitor.service;
+
+import com.example.stockmonitor.model.BarSeries;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link YahooFinanceClient} through {@link TrafficController} against an in-process HTTP stub
+ * that answers from a script, then with the recorded chart once the script runs out.
+ */
+class TrafficControllerTest {
+
+    private static final String CHART = YahooFinanceClient.CHART;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final Deque<Reply> script = new ArrayDeque<Reply>();
+    private final List<Long> requestTimes = new CopyOnWriteArrayList<Long>();
+    private byte[] chartFixture;
+    private volatile CountDownLatch holdRequests;
+    private volatile CountDownLatch requestArrived;
+
+    private static final class Reply {
+        final int status;
+        final String retryAfter;
+        final byte[] body;
+
+        Reply(int status, String retryAfter, byte[] body) {
+            this.status = status;
+            this.retryAfter = retryAfter;
+            this.body = body;
+        }
+    }
+
+    @BeforeEach
+    void startStub() throws IOException {
+        chartFixture = readFixture("/replay/chart-5m-1mo.json");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void retries429HonouringRetryAfter() throws IOException {
+        reply(429, "1");
+        YahooFinanceClient client = client(traffic(3, 2, 30));
+
+        BarSeries bars = client.getChart("AAPL", "1mo", "5m");
+
+        assertTrue(bars.size() > 0);
+        assertEquals(2, requestTimes.size());
+        // backoff is capped at 2 ms, so the wait can only have come from Retry-After
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(requestTimes.get(1) - requestTimes.get(0));
+        assertTrue(waitedMillis >= 950, "waited " + waitedMillis + " ms");
+    }
+
+    @Test
+    void retries5xxUntilSuccess() throws IOException {
+        reply(503, null);
+        reply(502, null);
+        reply(500, null);
+        YahooFinanceClient client = client(traffic(3, 5, 30));
+
+        assertTrue(client.getChart("AAPL", "1mo", "5m").size() > 0);
+        assertEquals(4, requestTimes.size());
+    }
+
+    @Test
+    void givesUpAfterTheRetryBudget() {
+        for (int i = 0; i < 5; i++) reply(503, null);
+        YahooFinanceClient client = client(traffic(2, 10, 30));
+
+        UpstreamStatusException e = assertThrows(UpstreamStatusException.class,
+                () -> client.getChart("AAPL", "1mo", "5m"));
+        assertEquals(503, e.getCode());
+        assertEquals(3, requestTimes.size());
+    }
+
+    @Test
+    void doesNotRetry404() {
+        reply(404, null);
+        TrafficController traffic = traffic(3, 2, 30);
+        YahooFinanceClient client = client(traffic);
+
+        UpstreamStatusException e = assertThrows(UpstreamStatusException.class,
+                () -> client.getChart("NOPE", "1mo", "5m"));
+        assertEquals(404, e.getCode());
+        assertEquals(1, requestTimes.size());
+        assertEquals(4, traffic.getConcurrencyLimit(CHART));
+    }
+
+    @Test
+    void unparseableBodyIsNotAThrottleSignal() {
+        TrafficController traffic = traffic(3, 1, 30);
+        YahooFinanceClient client = client(traffic);
+        for (int i = 0; i < 3; i++) {
+            script.add(new Reply(200, null, "{\"chart\":{\"result\":[{\"timestamp\":[1,2,".getBytes(StandardCharsets.UTF_8)));
+            assertThrows(JsonProcessingException.class, () -> client.getChart("AAPL", "1mo", "5m"));
+        }
+
+        // no retries, no halving, and the breaker (one failure to open) stays closed
+        assertEquals(3, requestTimes.size());
+        assertEquals(4, traffic.getConcurrencyLimit(CHART));
+        assertDoesNotThrow(() -> client.getChart("AAPL", "1mo", "5m"));
+    }
+
+    @Test
+    void breakerOpensThenLetsOneProbeThrough() throws Exception {
+        reply(500, null);
+        reply(500, null);
+        YahooFinanceClient client = client(traffic(0, 2, 1));
+        assertThrows(UpstreamStatusException.class, () -> client.getChart("AAPL", "1mo", "5m"));
+        assertThrows(UpstreamStatusException.class, () -> client.getChart("AAPL", "1mo", "5m"));
+
+        IOException rejected = assertThrows(IOException.class, () -> client.getChart("AAPL", "1mo", "5m"));
+        assertTrue(rejected.getMessage().contains("Circuit open"), rejected.getMessage());
+        assertEquals(2, requestTimes.size());
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+        holdRequests = new CountDownLatch(1);
+        requestArrived = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<BarSeries> probe = caller.submit(() -> client.getChart("AAPL", "1mo", "5m"));
+            assertTrue(requestArrived.await(5, TimeUnit.SECONDS), "probe reached the stub");
+
+            // while the probe is out every other call fails fast
+            IOException duringProbe = assertThrows(IOException.class, () -> client.getChart("MSFT", "1mo", "5m"));
+            assertTrue(duringProbe.getMessage().contains("Circuit open"), duringProbe.getMessage());
+            assertEquals(3, requestTimes.size());
+
+            holdRequests.countDown();
+            assertTrue(probe.get(5, TimeUnit.SECONDS).size() > 0);
+        } finally {
+            holdRequests.countDown();
+            caller.shutdownNow();
+        }
+        holdRequests = null;
+        assertTrue(client.getChart("MSFT", "1mo", "5m").size() > 0);
+        assertEquals(4, requestTimes.size());
+    }
+
+    @Test
+    void uncheckedFailureOfTheProbeReopensTheBreaker() throws Exception {
+        TrafficController traffic = traffic(0, 2, 1);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IOException.class, () -> traffic.call(CHART, () -> {
+                throw new IOException("connection reset");
+            }));
+        }
+        TimeUnit.MILLISECONDS.sleep(1100);
+
+        // the probe dies in parsing, as a parser bug on an unexpected body would
+        assertThrows(NullPointerException.class, () -> traffic.call(CHART, () -> {
+            throw new NullPointerException("indicators");
+        }));
+        IOException rejected = assertThrows(IOException.class, () -> traffic.call(CHART, () -> "too early"));
+        assertTrue(rejected.getMessage().contains("Circuit open"), rejected.getMessage());
+
+        // open again rather than stuck half-open: the next probe goes through
+        TimeUnit.MILLISECONDS.sleep(1100);
+        assertEquals("ok", traffic.call(CHART, () -> "ok"));
+        assertEquals("ok", traffic.call(CHART, () -> "ok"));
+    }
+
+    @Test
+    void concurrencyLimitHalvesOnThrottleAndRampsBack() throws IOException {
+        TrafficController traffic = traffic(0, 100, 30);
+        YahooFinanceClient client = client(traffic);
+        for (int i = 0; i < 40; i++) client.getChart("AAPL", "1mo", "5m");
+        int ramped = traffic.getConcurrencyLimit(CHART);
+        assertTrue(ramped > 4, "limit grew to " + ramped);
+
+        reply(429, null);
+        assertThrows(UpstreamStatusException.class, () -> client.getChart("AAPL", "1mo", "5m"));
+        int halved = traffic.getConcurrencyLimit(CHART);
+        assertTrue(halved <= ramped / 2 + 1 && halved < ramped, ramped + " -> " + halved);
+
+        for (int i = 0; i < 40; i++) client.getChart("AAPL", "1mo", "5m");
+        assertTrue(traffic.getConcurrencyLimit(CHART) > halved);
+    }
+
+    private void reply(int status, String retryAfter) {
+        script.add(new Reply(status, retryAfter, ("{\"error\":" + status + "}").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestTimes.add(System.nanoTime());
+        CountDownLatch arrived = requestArrived;
+        if (arrived != null) arrived.countDown();
+        CountDownLatch hold = holdRequests;
+        if (hold != null) {
+            try {
+                hold.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Reply r;
+        synchronized (script) {
+            r = script.poll();
+        }
+        if (r == null) r = new Reply(200, null, chartFixture);
+        if (r.retryAfter != null) exchange.getResponseHeaders().add("Retry-After", r.retryAfter);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(r.status, r.body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(r.body);
+        }
+    }
+
+    private static TrafficController traffic(int retries, int breakerFailures, long breakerOpenSeconds) {
+        // no rate limit; backoff of at most 2 ms
+        return new TrafficController(0, 1, 4, 16, retries, 1, 2, breakerFailures, breakerOpenSeconds,
+                new SimpleMeterRegistry());
+    }
+
+    private YahooFinanceClient client(TrafficController traffic) {
+        return new YahooFinanceClient("streaming", "http://127.0.0.1:" + server.getAddress().getPort(),
+                2000, 5000, 10000, 4, traffic, new SimpleMeterRegistry());
+    }
+
+    private static byte[] readFixture(String name) throws IOException {
+        try (InputStream in = TrafficControllerTest.class.getResourceAsStream(name)) {
+            assertNotNull(in, name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+}
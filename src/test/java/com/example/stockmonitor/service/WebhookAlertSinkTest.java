@@ -0,0 +1,32 @@
+package com.example.stockmonitor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The webhook sink exists only when a URL is actually configured.
+ */
+class WebhookAlertSinkTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withBean(ObjectMapper.class)
+            .withUserConfiguration(WebhookAlertSink.class);
+
+    @Test
+    void absentEmptyOrBlankUrlCreatesNoSink() {
+        runner.run(ctx -> assertThat(ctx).doesNotHaveBean(WebhookAlertSink.class));
+        runner.withPropertyValues("monitor.alerts.webhook.url=")
+                .run(ctx -> assertThat(ctx).doesNotHaveBean(WebhookAlertSink.class));
+        runner.withPropertyValues("monitor.alerts.webhook.url=   ")
+                .run(ctx -> assertThat(ctx).doesNotHaveBean(WebhookAlertSink.class));
+    }
+
+    @Test
+    void configuredUrlCreatesTheSink() {
+        runner.withPropertyValues("monitor.alerts.webhook.url=http://127.0.0.1:9/alerts")
+                .run(ctx -> assertThat(ctx).hasSingleBean(WebhookAlertSink.class));
+    }
+}
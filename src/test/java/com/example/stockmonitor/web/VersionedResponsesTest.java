@@ -0,0 +1,65 @@
+package com.example.stockmonitor.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tags and change cursors must only match within the process that issued them: a restarted or
+ * different node reuses the same version numbers for other content.
+ */
+class VersionedResponsesTest {
+
+    @Test
+    void matchingTagIsNotModifiedInTheSameProcess() {
+        VersionedResponses responses = responses();
+        String etag = responses.respond("analyses", 1, request(null), () -> "a").getHeaders().getETag();
+
+        ResponseEntity<byte[]> again = responses.respond("analyses", 1, request(etag), () -> "a");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, again.getStatusCode());
+        assertEquals(HttpStatus.OK, responses.respond("analyses", 2, request(etag), () -> "b").getStatusCode());
+    }
+
+    @Test
+    void tagOfAnotherProcessIsNeverNotModified() {
+        VersionedResponses before = responses();
+        VersionedResponses after = responses();
+        String etag = before.respond("analyses", 1, request(null), () -> "old").getHeaders().getETag();
+
+        ResponseEntity<byte[]> r = after.respond("analyses", 1, request(etag), () -> "new");
+
+        assertEquals(HttpStatus.OK, r.getStatusCode());
+        assertEquals("\"new\"", new String(r.getBody()));
+        assertNotEquals(etag, r.getHeaders().getETag());
+    }
+
+    @Test
+    void cursorOfAnotherProcessIsUnknown() {
+        VersionedResponses before = responses();
+        VersionedResponses after = responses();
+
+        assertEquals(7L, before.cursorVersion(before.cursor(7)));
+        assertEquals(-1L, after.cursorVersion(before.cursor(7)));
+        assertEquals(0L, after.cursorVersion("0"));
+        // a bare version number could be from any run
+        assertEquals(-1L, after.cursorVersion("7"));
+        assertEquals(-1L, after.cursorVersion(after.getEpoch() + ".x"));
+    }
+
+    private static VersionedResponses responses() {
+        return new VersionedResponses(new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private static MockHttpServletRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/analyses");
+        if (ifNoneMatch != null) request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return request;
+    }
+}